@@ -41,6 +41,12 @@ public class ProfileDB extends GenericPostgreSQL {
 
     private static final Logger log = LoggerFactory.getLogger(ProfileDB.class);
 
+    /**
+     * Channel that is notified, with the profile name as payload, when a
+     * profile is changed
+     */
+    public static final String CHANNEL = "profile_change";
+
     public ProfileDB(String url) {
         super(url);
     }
@@ -93,6 +99,9 @@ public class ProfileDB extends GenericPostgreSQL {
 
     /**
      * Update the database to reflect profile changes
+     * <p>
+     * Every changed profile is notified on {@link #CHANNEL}, when the changes
+     * are committed.
      *
      * @param before How profiles are in the database
      * @param after  How they're supposed to be after the transformation
@@ -101,7 +110,8 @@ public class ProfileDB extends GenericPostgreSQL {
     public void updateProfiles(Map<String, Profile> before, Map<String, Profile> after) throws SQLException {
         try (Connection connection = getConnection() ;
              PreparedStatement add = connection.prepareStatement("INSERT INTO profiles(agencyId, classifier, collectionIdentifier) VALUES(?, ?, ?)") ;
-             PreparedStatement del = connection.prepareStatement("DELETE FROM profiles WHERE agencyId = ? AND classifier = ? AND collectionIdentifier = ?")) {
+             PreparedStatement del = connection.prepareStatement("DELETE FROM profiles WHERE agencyId = ? AND classifier = ? AND collectionIdentifier = ?") ;
+             PreparedStatement notify = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
             connection.setAutoCommit(false);
             try {
 
@@ -130,6 +140,11 @@ public class ProfileDB extends GenericPostgreSQL {
                             add.executeUpdate();
                         }
                     }
+                    if (!changes.isEmpty()) {
+                        notify.setString(1, CHANNEL);
+                        notify.setString(2, profileName);
+                        notify.execute();
+                    }
                 }
                 connection.commit();
             } catch (SQLException e) {
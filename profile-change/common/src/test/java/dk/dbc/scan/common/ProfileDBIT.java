@@ -24,8 +24,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
@@ -78,6 +82,43 @@ public class ProfileDBIT extends IntegrationTestBase {
         assertThat(profiles, is(profilesNew));
     }
 
+    @Test(timeout = 2_000L)
+    public void testUpdateProfilesNotifies() throws Exception {
+        System.out.println("testUpdateProfilesNotifies");
+        ProfileDB profileDb = new ProfileDB(PG_URL);
+        clearDb();
+        addToDb("123456-abc", "123456-katalog", "870970-basis");
+        addToDb("654321-abc", "777777-katalog", "870970-basis");
+        Map<String, Profile> profilesOld = profileDb.readProfiles();
+        Map<String, Profile> profilesNew = new HashMap<String, Profile>() {
+            {
+                put("123456-abc", new Profile("123456-katalog", "870970-basis"));
+                put("654321-abc", new Profile("777777-katalog"));
+                put("234567-foo", new Profile("870970-basis"));
+            }
+        };
+
+        try (Connection connection = PG.createConnection() ;
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("LISTEN " + ProfileDB.CHANNEL);
+
+            profileDb.updateProfiles(profilesOld, profilesNew);
+
+            List<String> changed = new ArrayList<>();
+            while (changed.size() < 2) {
+                PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(500);
+                if (notifications == null)
+                    break;
+                for (PGNotification notification : notifications) {
+                    changed.add(notification.getParameter());
+                }
+            }
+            System.out.println("changed = " + changed);
+
+            assertThat(changed, containsInAnyOrder("654321-abc", "234567-foo"));
+        }
+    }
+
     public void clearDb() throws SQLException {
         try (Connection connection = PG.createConnection() ;
              Statement stmt = connection.createStatement()) {
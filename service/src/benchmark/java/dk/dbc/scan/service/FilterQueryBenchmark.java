@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Compare a profile filter as a boolean query with the same filter as a
+ * terms query parser filter
+ * <p>
+ * The collection identifiers are the most used ones in the index. Every
+ * filter is sent with cache=false, so that SolR has to parse and execute it
+ * every time, and then with the filterCache, where only the lookup (and for
+ * the boolean query, the parsing of the cache key) is paid. QTime as reported
+ * by SolR is used. Compile with {@code mvn -P benchmark test-compile}, and
+ * run with:
+ * <pre>
+ * java -cp ... dk.dbc.scan.service.FilterQueryBenchmark [solr-url] [collections] [requests]
+ * </pre>
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class FilterQueryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String solrUrl = args.length > 0 ? args[0] : "http://localhost:8983/solr/corepo";
+        int collections = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        Config config = new Config(
+                "SOLR_URL=" + solrUrl,
+                "SOLR_APPID=benchmark",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api"
+        );
+        config.init();
+        SolrClient solr = config.getSolrClient();
+
+        List<String> collectionIdentifiers = collectionIdentifiers(solr, collections);
+        String query = FilterQueries.canonical(collectionIdentifiers.stream()
+                .map(collectionIdentifier -> FilterQueries.COLLECTION_IDENTIFIER + ":\"" + collectionIdentifier + "\"")
+                .collect(joining(" OR ")));
+        String terms = FilterQueries.terms(query, collectionIdentifiers);
+        if (terms == null)
+            throw new IllegalStateException("Collection identifiers cannot be made into a terms filter");
+        System.out.printf("%d collection identifiers, fq length: query %d terms %d%n",
+                          collectionIdentifiers.size(), query.length(), terms.length());
+
+        run("warmup", solr, uncached(query), requests / 10);
+        run("warmup", solr, uncached(terms), requests / 10);
+        run("query", solr, uncached(query), requests);
+        run("terms", solr, uncached(terms), requests);
+        run("query cached", solr, query, requests);
+        run("terms cached", solr, terms, requests);
+    }
+
+    private static List<String> collectionIdentifiers(SolrClient solr, int count) throws Exception {
+        SolrQuery req = new SolrQuery("*:*")
+                .setRows(0)
+                .setFacet(true)
+                .setFacetLimit(count)
+                .setFacetMinCount(1)
+                .addFacetField(FilterQueries.COLLECTION_IDENTIFIER);
+        FacetField facet = solr.query(req).getFacetField(FilterQueries.COLLECTION_IDENTIFIER);
+        return facet.getValues().stream()
+                .map(FacetField.Count::getName)
+                .toList();
+    }
+
+    private static String uncached(String filterQuery) {
+        if (filterQuery.startsWith("{!terms "))
+            return "{!terms cache=false " + filterQuery.substring(8);
+        return "{!cache=false}" + filterQuery;
+    }
+
+    private static void run(String name, SolrClient solr, String filterQuery, int requests) throws Exception {
+        List<Long> qTimes = new ArrayList<>(requests);
+        long hits = 0;
+        for (int i = 0 ; i < requests ; i++) {
+            // Different main queries, so the queryResultCache doesn't answer
+            SolrQuery req = new SolrQuery("rec.manifestationId:" + i + " OR *:*")
+                    .setRows(0)
+                    .addFilterQuery(filterQuery);
+            QueryResponse resp = solr.query(req);
+            qTimes.add((long) resp.getQTime());
+            hits = resp.getResults().getNumFound();
+        }
+        if (name.equals("warmup"))
+            return;
+        Collections.sort(qTimes);
+        System.out.printf("%-14s hits %9d  mean %6.2fms  p50 %4dms  p99 %4dms%n",
+                          name,
+                          hits,
+                          qTimes.stream().mapToLong(Long::longValue).average().orElse(0),
+                          qTimes.get(qTimes.size() / 2),
+                          qTimes.get(Math.max(0, (int) Math.ceil(qTimes.size() * 0.99) - 1)));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare running scans on a bounded pool (like the managed executor) with
+ * running them on virtual threads
+ * <p>
+ * A scan is simulated as a coordinator task, that fans out a number of
+ * hitcount requests, each holding a permit from a limiter while "waiting for
+ * SolR". Compile with {@code mvn -P benchmark test-compile}, and run
+ * with:
+ * <pre>
+ * java -cp ... dk.dbc.scan.service.ScanExecutorBenchmark [scans] [pool-size] [solr-millis]
+ * </pre>
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ScanExecutorBenchmark {
+
+    private static final int HITCOUNT_REQUESTS_PER_SCAN = 4;
+    private static final int LIMITER_PERMITS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int scans = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int poolSize = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int solrMillis = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        ScanExecutor managed = ScanExecutor.instance(config("managed"), pool);
+        try {
+            run("warmup", managed, scans / 10, solrMillis);
+            run("managed(" + poolSize + ")", managed, scans, solrMillis);
+        } finally {
+            managed.destroy();
+            pool.shutdownNow();
+        }
+        ScanExecutor virtual = ScanExecutor.instance(config("virtual"), null);
+        try {
+            run("warmup", virtual, scans / 10, solrMillis);
+            run("virtual", virtual, scans, solrMillis);
+        } finally {
+            virtual.destroy();
+        }
+    }
+
+    private static Config config(String mode) {
+        Config config = new Config(
+                "SOLR_URL=http://localhost:8983/solr/corepo",
+                "SOLR_APPID=benchmark",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api",
+                "EXECUTOR_MODE=" + mode
+        );
+        config.init();
+        return config;
+    }
+
+    private static void run(String name, ScanExecutor executor, int scans, int solrMillis) throws Exception {
+        Semaphore limiter = new Semaphore(LIMITER_PERMITS, true);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(scans));
+        List<CompletableFuture<Void>> all = new ArrayList<>(scans);
+        long start = System.nanoTime();
+        for (int i = 0 ; i < scans ; i++) {
+            long submitted = System.nanoTime();
+            all.add(CompletableFuture.runAsync(() -> {
+                List<CompletableFuture<Void>> hitcounts = new ArrayList<>(HITCOUNT_REQUESTS_PER_SCAN);
+                for (int j = 0 ; j < HITCOUNT_REQUESTS_PER_SCAN ; j++) {
+                    hitcounts.add(CompletableFuture.runAsync(() -> solr(limiter, solrMillis), executor.blocking()));
+                }
+                hitcounts.forEach(CompletableFuture::join);
+                latencies.add(System.nanoTime() - submitted);
+            }, executor));
+        }
+        CompletableFuture.allOf(all.toArray(CompletableFuture[]::new)).get(10, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        if (name.equals("warmup"))
+            return;
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        System.out.printf("%-14s %8.1f scans/s  p50 %6.1fms  p99 %6.1fms  max %6.1fms%n",
+                          name,
+                          scans * 1e9 / elapsed,
+                          percentile(sorted, 0.50),
+                          percentile(sorted, 0.99),
+                          sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static void solr(Semaphore limiter, int solrMillis) {
+        try {
+            limiter.acquire();
+            try {
+                Thread.sleep(solrMillis);
+            } finally {
+                limiter.release();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        int index = (int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import com.hazelcast.cache.ICache;
+import com.hazelcast.config.CacheConfig;
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.MaxSizePolicy;
+import java.util.concurrent.TimeUnit;
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.CacheManager;
+import javax.cache.configuration.Factory;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ExpiryPolicy;
+
+/**
+ * Helpers for programmatically created caches
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public final class Caches {
+
+    private Caches() {
+    }
+
+    /**
+     * Get or create a cache that expires entries and is bounded in size
+     *
+     * @param <K>          key type
+     * @param <V>          value type
+     * @param cacheManager where to find/create the cache
+     * @param name         name of the cache
+     * @param keyType      key class
+     * @param valueType    value class
+     * @param size         max number of entries (per node)
+     * @param timeout      number of seconds an entry lives, from when it was
+     *                     created
+     * @return cache
+     */
+    public static <K, V> Cache<K, V> bounded(CacheManager cacheManager, String name, Class<K> keyType, Class<V> valueType, int size, int timeout) {
+        return bounded(cacheManager, name, keyType, valueType, size, CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, timeout)));
+    }
+
+    /**
+     * Get or create a cache that expires entries by a given policy and is
+     * bounded in size
+     *
+     * @param <K>          key type
+     * @param <V>          value type
+     * @param cacheManager where to find/create the cache
+     * @param name         name of the cache
+     * @param keyType      key class
+     * @param valueType    value class
+     * @param size         max number of entries (per node)
+     * @param expiry       when entries expire
+     * @return cache
+     */
+    public static <K, V> Cache<K, V> bounded(CacheManager cacheManager, String name, Class<K> keyType, Class<V> valueType, int size, Factory<? extends ExpiryPolicy> expiry) {
+        Cache<K, V> cache = cacheManager.getCache(name);
+        if (cache != null)
+            return cache;
+        CacheConfig<K, V> cacheConfig = new CacheConfig<>();
+        cacheConfig.setTypes(keyType, valueType);
+        cacheConfig.setExpiryPolicyFactory(expiry);
+        cacheConfig.setStatisticsEnabled(true);
+        cacheConfig.setEvictionConfig(new EvictionConfig()
+                .setSize(size)
+                .setMaxSizePolicy(MaxSizePolicy.ENTRY_COUNT)
+                .setEvictionPolicy(EvictionPolicy.LRU));
+        try {
+            return cacheManager.createCache(name, cacheConfig);
+        } catch (CacheException ex) {
+            // Another node created it in the meantime
+            return cacheManager.getCache(name);
+        }
+    }
+
+    /**
+     * Number of evictions from a cache on this node
+     *
+     * @param cache the cache (can be null)
+     * @return number of evicted entries
+     */
+    public static long evictions(Cache<?, ?> cache) {
+        if (cache == null)
+            return 0;
+        try {
+            return cache.unwrap(ICache.class).getLocalCacheStatistics().getCacheEvictions();
+        } catch (IllegalArgumentException ex) {
+            return 0;
+        }
+    }
+}
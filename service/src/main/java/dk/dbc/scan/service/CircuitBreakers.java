@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.ClientErrorException;
+import org.apache.solr.common.SolrException;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stop calling a dependency that fails or is slow
+ * <p>
+ * Every dependency (normalize/terms/select requests to SolR and profile
+ * lookups in VipCore) has a breaker, that keeps the outcome of the last
+ * CIRCUIT_WINDOW calls. When CIRCUIT_FAILURE_PERCENT of them failed, or
+ * CIRCUIT_SLOW_PERCENT took more than CIRCUIT_SLOW_CALL ms, the breaker opens,
+ * and calls are rejected at once for CIRCUIT_OPEN_TIME ms. Then up to
+ * CIRCUIT_PROBES calls are let through; if they succeed the breaker closes,
+ * otherwise it opens again.
+ * <p>
+ * The SolR breakers guard the asynchronous terms and select requests of the
+ * scans, and the normalize request.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class CircuitBreakers {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakers.class);
+
+    public static final String NORMALIZE = "normalize";
+    public static final String TERMS = "terms";
+    public static final String SELECT = "select";
+    public static final String PROFILE = "profile";
+
+    @Inject
+    Config config;
+
+    private final ConcurrentHashMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public CircuitBreakers() {
+    }
+
+    private CircuitBreakers(Config config) {
+        this.config = config;
+    }
+
+    static CircuitBreakers instance(Config config) {
+        return new CircuitBreakers(config);
+    }
+
+    /**
+     * Start a call to a dependency
+     *
+     * @param name dependency
+     * @return the call, that should be told the outcome
+     * @throws OpenException if the breaker is open
+     */
+    public Call call(String name) {
+        if (config.getCircuitFailurePercent() == 0 && config.getCircuitSlowPercent() == 0)
+            return Call.UNGUARDED;
+        return breaker(name).call();
+    }
+
+    /**
+     * Reject if any of the breakers is open, without using a probe
+     *
+     * @param names dependencies
+     * @throws OpenException if one of the breakers is open
+     */
+    public void ensureAvailable(String... names) {
+        for (String name : names) {
+            Breaker breaker = breakers.get(name);
+            if (breaker != null)
+                breaker.ensureAvailable();
+        }
+    }
+
+    /**
+     * The state of every breaker that has been used
+     *
+     * @return map of dependency to state
+     */
+    public Map<String, Status> status() {
+        TreeMap<String, Status> status = new TreeMap<>();
+        breakers.forEach((name, breaker) -> status.put(name, breaker.status()));
+        return status;
+    }
+
+    private Breaker breaker(String name) {
+        return breakers.computeIfAbsent(name, Breaker::new);
+    }
+
+    private int state(String name) {
+        Breaker breaker = breakers.get(name);
+        return breaker == null ? State.CLOSED.ordinal() : breaker.state().ordinal();
+    }
+
+    @Gauge(name = "normalizeBreaker", unit = MetricUnits.NONE,
+           description = "State of the normalize circuit breaker (0=closed, 1=half-open, 2=open)")
+    public int getNormalizeState() {
+        return state(NORMALIZE);
+    }
+
+    @Gauge(name = "termsBreaker", unit = MetricUnits.NONE,
+           description = "State of the terms circuit breaker (0=closed, 1=half-open, 2=open)")
+    public int getTermsState() {
+        return state(TERMS);
+    }
+
+    @Gauge(name = "selectBreaker", unit = MetricUnits.NONE,
+           description = "State of the select circuit breaker (0=closed, 1=half-open, 2=open)")
+    public int getSelectState() {
+        return state(SELECT);
+    }
+
+    @Gauge(name = "profileBreaker", unit = MetricUnits.NONE,
+           description = "State of the profile circuit breaker (0=closed, 1=half-open, 2=open)")
+    public int getProfileState() {
+        return state(PROFILE);
+    }
+
+    @Gauge(name = "breakerRejected", unit = MetricUnits.NONE,
+           description = "Number of calls rejected by an open circuit breaker")
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    /**
+     * A call in progress
+     */
+    public static class Call {
+
+        private static final Call UNGUARDED = new Call(null, false);
+
+        private final Breaker breaker;
+        private final boolean probe;
+        private final long start;
+
+        private Call(Breaker breaker, boolean probe) {
+            this.breaker = breaker;
+            this.probe = probe;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * The dependency answered
+         */
+        public void success() {
+            if (breaker != null)
+                breaker.record(this, false);
+        }
+
+        /**
+         * The dependency failed
+         */
+        public void failure() {
+            if (breaker != null)
+                breaker.record(this, true);
+        }
+
+        /**
+         * The call threw an exception
+         * <p>
+         * A client error (http 4xx) is the dependency answering that it
+         * didn't like the request, and is counted as a success. Everything
+         * else (5xx, io errors and timeouts) is a failure.
+         *
+         * @param ex what the call failed with
+         */
+        public void failed(Throwable ex) {
+            if (isClientError(ex)) {
+                success();
+            } else {
+                failure();
+            }
+        }
+
+        /**
+         * The call was abandoned, and says nothing about the dependency
+         */
+        public void abandoned() {
+            if (breaker != null)
+                breaker.abandoned(this);
+        }
+    }
+
+    /**
+     * Is an exception an answer from the dependency about a bad request
+     *
+     * @param ex the exception, possibly wrapped by a future
+     * @return if it is a http 4xx
+     */
+    static boolean isClientError(Throwable ex) {
+        while (( ex instanceof CompletionException || ex instanceof ExecutionException ) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        if (ex instanceof SolrException) {
+            int code = ((SolrException) ex).code();
+            return code >= 400 && code < 500;
+        }
+        return ex instanceof ClientErrorException;
+    }
+
+    /**
+     * Thrown when a call is rejected by an open breaker
+     * <p>
+     * Without stack trace, since it is expected to be thrown a lot
+     */
+    public static class OpenException extends RuntimeException {
+
+        private final long retryAfter;
+
+        private OpenException(String name, long retryAfter) {
+            super("Service unavailable: " + name, null, false, false);
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * When to try again
+         *
+         * @return number of seconds
+         */
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    @SuppressFBWarnings()
+    public static class Status {
+
+        public State state;
+        public int calls;
+        public int failurePercent;
+        public int slowPercent;
+
+        public Status() {
+        }
+
+        private Status(State state, int calls, int failures, int slow) {
+            this.state = state;
+            this.calls = calls;
+            this.failurePercent = calls == 0 ? 0 : failures * 100 / calls;
+            this.slowPercent = calls == 0 ? 0 : slow * 100 / calls;
+        }
+    }
+
+    private class Breaker {
+
+        private final String name;
+        private final boolean[] failed;
+        private final boolean[] slow;
+        private int next;
+        private int calls;
+        private int failures;
+        private int slows;
+        private State state;
+        private long openedAt;
+        private int probing;
+
+        private Breaker(String name) {
+            this.name = name;
+            this.failed = new boolean[config.getCircuitWindow()];
+            this.slow = new boolean[config.getCircuitWindow()];
+            this.state = State.CLOSED;
+        }
+
+        private synchronized Call call() {
+            switch (state) {
+                case OPEN:
+                    if (openRemaining() > 0)
+                        throw reject();
+                    log.info("Circuit breaker {} is half-open", name);
+                    state = State.HALF_OPEN;
+                    probing = 0;
+                // fall through
+                case HALF_OPEN:
+                    if (probing >= config.getCircuitProbes())
+                        throw reject();
+                    probing++;
+                    return new Call(this, true);
+                default:
+                    return new Call(this, false);
+            }
+        }
+
+        private synchronized void ensureAvailable() {
+            if (state == State.OPEN && openRemaining() > 0)
+                throw reject();
+        }
+
+        private synchronized State state() {
+            return state;
+        }
+
+        private synchronized Status status() {
+            return new Status(state, calls, failures, slows);
+        }
+
+        private synchronized void record(Call call, boolean failure) {
+            long slowCall = config.getCircuitSlowCall();
+            boolean isSlow = System.nanoTime() - call.start >= TimeUnit.MILLISECONDS.toNanos(slowCall);
+            if (call.probe) {
+                probing--;
+                if (state != State.HALF_OPEN)
+                    return;
+                if (failure || isSlow && config.getCircuitSlowPercent() != 0) {
+                    log.warn("Circuit breaker {} is open again (probe {})", name, failure ? "failed" : "was slow");
+                    open();
+                } else {
+                    log.info("Circuit breaker {} is closed", name);
+                    state = State.CLOSED;
+                }
+                return;
+            }
+            if (state != State.CLOSED)
+                return;
+            if (calls == failed.length) {
+                if (failed[next])
+                    failures--;
+                if (slow[next])
+                    slows--;
+            } else {
+                calls++;
+            }
+            failed[next] = failure;
+            slow[next] = isSlow;
+            if (failure)
+                failures++;
+            if (isSlow)
+                slows++;
+            next = ( next + 1 ) % failed.length;
+            if (calls < config.getCircuitMinCalls())
+                return;
+            int failurePercent = config.getCircuitFailurePercent();
+            int slowPercent = config.getCircuitSlowPercent();
+            if (failurePercent != 0 && failures * 100 >= failurePercent * calls ||
+                slowPercent != 0 && slows * 100 >= slowPercent * calls) {
+                log.warn("Circuit breaker {} is open ({} of {} calls failed, {} slow)", name, failures, calls, slows);
+                open();
+            }
+        }
+
+        private synchronized void abandoned(Call call) {
+            if (call.probe)
+                probing--;
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            // Start over when closing again
+            next = 0;
+            calls = 0;
+            failures = 0;
+            slows = 0;
+        }
+
+        private long openRemaining() {
+            return TimeUnit.MILLISECONDS.toNanos(config.getCircuitOpenTime()) - ( System.nanoTime() - openedAt );
+        }
+
+        private OpenException reject() {
+            rejected.incrementAndGet();
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(Math.max(0L, openRemaining())) + 1;
+            return new OpenException(name, seconds);
+        }
+    }
+}
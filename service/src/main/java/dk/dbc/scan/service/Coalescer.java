@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+/**
+ * Share in-flight calls between identical concurrent requests
+ * <p>
+ * The first caller with a given key makes the call, callers with the same
+ * key that arrive before it completes get the same result. Every caller gets
+ * its own copy of the future, so one caller cancelling doesn't affect the
+ * others. When every caller has cancelled, the call itself is cancelled.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class Coalescer {
+
+    private final ConcurrentHashMap<String, Shared<?>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public Coalescer() {
+    }
+
+    static Coalescer instance() {
+        return new Coalescer();
+    }
+
+    /**
+     * Make an asynchronous call, or join an identical one in flight
+     *
+     * @param <T>  type of result
+     * @param key  identifies the call, including all arguments that affect
+     *             the result
+     * @param call how to make the call
+     * @return future result
+     */
+    public <T> CompletableFuture<T> async(String key, Supplier<CompletableFuture<T>> call) {
+        Shared<?>[] created = new Shared<?>[1];
+        // The key identifies the call, so a call in flight has the same type
+        @SuppressWarnings("unchecked")
+        Shared<T> shared = (Shared<T>) inFlight.compute(key, (k, existing) -> {
+            if (existing == null) {
+                existing = new Shared<>();
+                created[0] = existing;
+            }
+            existing.callers++;
+            return existing;
+        });
+        CompletableFuture<T> mine = shared.result.copy();
+        mine.whenComplete((value, ex) -> {
+            if (mine.isCancelled())
+                leave(key, shared);
+        });
+        if (created[0] == null) {
+            coalesced.incrementAndGet();
+            return mine;
+        }
+        try {
+            CompletableFuture<T> request = call.get();
+            Futures.cancelling(shared.result, request);
+            request.whenComplete((value, ex) -> {
+                inFlight.remove(key, shared);
+                if (ex == null) {
+                    shared.result.complete(value);
+                } else {
+                    shared.result.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, shared);
+            shared.result.completeExceptionally(ex);
+        }
+        return mine;
+    }
+
+    /**
+     * A caller has cancelled, cancel the call if it was the last one
+     *
+     * @param key    identifies the call
+     * @param shared the call
+     */
+    private void leave(String key, Shared<?> shared) {
+        boolean[] last = new boolean[1];
+        inFlight.computeIfPresent(key, (k, existing) -> {
+            if (existing != shared || --existing.callers > 0)
+                return existing;
+            last[0] = true;
+            return null;
+        });
+        if (last[0])
+            shared.result.cancel(true);
+    }
+
+    /**
+     * Make a blocking call on the calling thread, or join an identical one in
+     * flight
+     *
+     * @param <T>  type of result
+     * @param key  identifies the call, including all arguments that affect
+     *             the result
+     * @param call how to make the call
+     * @return future result, that is completed if this caller made the call
+     */
+    public <T> CompletableFuture<T> blocking(String key, Callable<T> call) {
+        return async(key, () -> {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            try {
+                future.complete(call.call());
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+            return future;
+        });
+    }
+
+    @Gauge(name = "coalesced", unit = MetricUnits.NONE,
+           description = "Number of calls that shared the result of an identical call in flight")
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    @Gauge(name = "inFlight", unit = MetricUnits.NONE,
+           description = "Number of distinct calls in flight")
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * A call in flight, and the number of callers still waiting for it
+     * (guarded by the inFlight map)
+     *
+     * @param <T> type of result
+     */
+    private static final class Shared<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private int callers;
+    }
+}
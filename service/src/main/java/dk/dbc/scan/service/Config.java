@@ -18,7 +18,10 @@
  */
 package dk.dbc.scan.service;
 
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import jakarta.annotation.PostConstruct;
@@ -47,6 +50,7 @@ import org.slf4j.LoggerFactory;
 public class Config {
 
     private static final Logger log = LoggerFactory.getLogger(Config.class);
+    private static final Pattern PROFILE_NAME = Pattern.compile("\\d+-\\w+");
 
     private final Map<String, String> env;
 
@@ -54,6 +58,63 @@ public class Config {
     private SolrClient solrClient;
     private int maxCount;
     private int parallelHitcountRequests;
+    private int parallelHitcountRequestsTotal;
+    private int hitcountAgencyMax;
+    private int hitcountBatchSize;
+    private int hitcountDispatchWindow;
+    private int hitcountDispatchMax;
+    private int hitcountCacheSize;
+    private int hitcountCacheTimeout;
+    private int scanCursorCacheSize;
+    private int scanCursorTimeout;
+    private int prefetchParallel;
+    private int prefetchCacheSize;
+    private int prefetchTimeout;
+    private int normalizeCacheSize;
+    private int normalizeCacheTimeout;
+    private int normalizeCacheSchemaCheck;
+    private int cacheTimeout;
+    private int cacheTimeoutError;
+    private int profileCacheSize;
+    private int profileRefreshAhead;
+    private int profileStaleGrace;
+    private String profileDb;
+    private FilterQueries.Mode profileFilterMode;
+    private List<String> profileWarmupList;
+    private int profileWarmupParallel;
+    private int profileWarmupTimeout;
+    private ScanExecutor.Mode executorMode;
+    private int hedgePercentile;
+    private int hedgeMinDelay;
+    private int hedgeMaxPercent;
+    private int hedgeWindow;
+    private int circuitWindow;
+    private int circuitMinCalls;
+    private int circuitFailurePercent;
+    private int circuitSlowCall;
+    private int circuitSlowPercent;
+    private int circuitOpenTime;
+    private int circuitProbes;
+    private int admissionLimit;
+    private int admissionQueue;
+    private int admissionQueueTimeout;
+    private int admissionRetryAfter;
+    private int admissionMinLimit;
+    private int admissionLatencyTarget;
+    private ScanAdmission.Mode admissionMode;
+    private int metricsMaxRegisters;
+    private int scanTimeout;
+    private int scanTimeoutMax;
+    private Normalizer.Mode normalizeMode;
+    private int overFetchWindow;
+    private int overFetchMinSamples;
+    private int overFetchMinExtra;
+    private int overFetchMaxFactor;
+    private int overFetchOverheadMin;
+    private int overFetchOverheadMax;
+    private int overFetchMaxRegisters;
+    private List<String> normalizeLocalRegisters;
+    private int normalizeVerifyEvery;
     private Client httpClient;
     private UriBuilder vipCore;
 
@@ -86,6 +147,133 @@ public class Config {
         this.parallelHitcountRequests = Integer.parseUnsignedInt(get("PARALLEL_HITCOUNT_REQUESTS", "20"));
         if (parallelHitcountRequests <= 0)
             throw new IllegalArgumentException("variable PARALLEL_HITCOUNT_REQUESTS should be at least 1");
+        this.parallelHitcountRequestsTotal = Integer.parseUnsignedInt(get("PARALLEL_HITCOUNT_REQUESTS_TOTAL", String.valueOf(parallelHitcountRequests * 10)));
+        if (parallelHitcountRequestsTotal < parallelHitcountRequests)
+            throw new IllegalArgumentException("variable PARALLEL_HITCOUNT_REQUESTS_TOTAL should be at least PARALLEL_HITCOUNT_REQUESTS");
+        this.hitcountAgencyMax = Integer.parseUnsignedInt(get("HITCOUNT_AGENCY_MAX", String.valueOf(parallelHitcountRequestsTotal)));
+        if (hitcountAgencyMax <= 0)
+            throw new IllegalArgumentException("variable HITCOUNT_AGENCY_MAX should be at least 1");
+        this.hitcountBatchSize = Integer.parseUnsignedInt(get("HITCOUNT_BATCH_SIZE", "25"));
+        if (hitcountBatchSize <= 0)
+            throw new IllegalArgumentException("variable HITCOUNT_BATCH_SIZE should be at least 1");
+        this.hitcountDispatchWindow = Integer.parseUnsignedInt(get("HITCOUNT_DISPATCH_WINDOW", "0"));
+        this.hitcountDispatchMax = Integer.parseUnsignedInt(get("HITCOUNT_DISPATCH_MAX", "100"));
+        if (hitcountDispatchMax <= 0)
+            throw new IllegalArgumentException("variable HITCOUNT_DISPATCH_MAX should be at least 1");
+        this.hitcountCacheSize = Integer.parseUnsignedInt(get("HITCOUNT_CACHE_SIZE", "100000"));
+        this.hitcountCacheTimeout = Integer.parseUnsignedInt(get("HITCOUNT_CACHE_TIMEOUT", "600"));
+        if (hitcountCacheTimeout <= 0)
+            throw new IllegalArgumentException("variable HITCOUNT_CACHE_TIMEOUT should be at least 1");
+        this.scanCursorCacheSize = Integer.parseUnsignedInt(get("SCAN_CURSOR_CACHE_SIZE", "10000"));
+        this.scanCursorTimeout = Integer.parseUnsignedInt(get("SCAN_CURSOR_TIMEOUT", "120"));
+        if (scanCursorTimeout <= 0)
+            throw new IllegalArgumentException("variable SCAN_CURSOR_TIMEOUT should be at least 1");
+        this.prefetchParallel = Integer.parseUnsignedInt(get("PREFETCH_PARALLEL", "0"));
+        this.prefetchCacheSize = Integer.parseUnsignedInt(get("PREFETCH_CACHE_SIZE", "1000"));
+        if (prefetchParallel > 0 && prefetchCacheSize <= 0)
+            throw new IllegalArgumentException("variable PREFETCH_CACHE_SIZE should be at least 1");
+        this.prefetchTimeout = Integer.parseUnsignedInt(get("PREFETCH_TIMEOUT", "60"));
+        if (prefetchTimeout <= 0)
+            throw new IllegalArgumentException("variable PREFETCH_TIMEOUT should be at least 1");
+        this.normalizeCacheSize = Integer.parseUnsignedInt(get("NORMALIZE_CACHE_SIZE", "10000"));
+        this.normalizeCacheTimeout = Integer.parseUnsignedInt(get("NORMALIZE_CACHE_TIMEOUT", "3600"));
+        if (normalizeCacheTimeout <= 0)
+            throw new IllegalArgumentException("variable NORMALIZE_CACHE_TIMEOUT should be at least 1");
+        this.normalizeCacheSchemaCheck = Integer.parseUnsignedInt(get("NORMALIZE_CACHE_SCHEMA_CHECK", "0"));
+        this.scanTimeout = Integer.parseUnsignedInt(get("SCAN_TIMEOUT", "10000"));
+        if (scanTimeout <= 0)
+            throw new IllegalArgumentException("variable SCAN_TIMEOUT should be at least 1");
+        this.scanTimeoutMax = Integer.parseUnsignedInt(get("SCAN_TIMEOUT_MAX", "60000"));
+        if (scanTimeoutMax < scanTimeout)
+            throw new IllegalArgumentException("variable SCAN_TIMEOUT_MAX should be at least SCAN_TIMEOUT");
+        this.hedgePercentile = Integer.parseUnsignedInt(get("HEDGE_PERCENTILE", "0"));
+        if (hedgePercentile > 99)
+            throw new IllegalArgumentException("variable HEDGE_PERCENTILE should be at most 99");
+        this.hedgeMinDelay = Integer.parseUnsignedInt(get("HEDGE_MIN_DELAY", "20"));
+        this.hedgeMaxPercent = Integer.parseUnsignedInt(get("HEDGE_MAX_PERCENT", "5"));
+        if (hedgeMaxPercent > 100)
+            throw new IllegalArgumentException("variable HEDGE_MAX_PERCENT should be at most 100");
+        this.hedgeWindow = Integer.parseUnsignedInt(get("HEDGE_WINDOW", "1000"));
+        if (hedgeWindow <= 0)
+            throw new IllegalArgumentException("variable HEDGE_WINDOW should be at least 1");
+        this.circuitWindow = Integer.parseUnsignedInt(get("CIRCUIT_WINDOW", "50"));
+        if (circuitWindow <= 0)
+            throw new IllegalArgumentException("variable CIRCUIT_WINDOW should be at least 1");
+        this.circuitMinCalls = Integer.parseUnsignedInt(get("CIRCUIT_MIN_CALLS", "20"));
+        if (circuitMinCalls <= 0)
+            throw new IllegalArgumentException("variable CIRCUIT_MIN_CALLS should be at least 1");
+        if (circuitMinCalls > circuitWindow)
+            throw new IllegalArgumentException("variable CIRCUIT_MIN_CALLS should be at most CIRCUIT_WINDOW");
+        this.circuitFailurePercent = Integer.parseUnsignedInt(get("CIRCUIT_FAILURE_PERCENT", "50"));
+        if (circuitFailurePercent > 100)
+            throw new IllegalArgumentException("variable CIRCUIT_FAILURE_PERCENT should be at most 100");
+        this.circuitSlowCall = Integer.parseUnsignedInt(get("CIRCUIT_SLOW_CALL", "5000"));
+        this.circuitSlowPercent = Integer.parseUnsignedInt(get("CIRCUIT_SLOW_PERCENT", "0"));
+        if (circuitSlowPercent > 100)
+            throw new IllegalArgumentException("variable CIRCUIT_SLOW_PERCENT should be at most 100");
+        this.circuitOpenTime = Integer.parseUnsignedInt(get("CIRCUIT_OPEN_TIME", "5000"));
+        this.circuitProbes = Integer.parseUnsignedInt(get("CIRCUIT_PROBES", "1"));
+        if (circuitProbes <= 0)
+            throw new IllegalArgumentException("variable CIRCUIT_PROBES should be at least 1");
+        this.admissionLimit = Integer.parseUnsignedInt(get("ADMISSION_LIMIT", "0"));
+        this.admissionQueue = Integer.parseUnsignedInt(get("ADMISSION_QUEUE", "50"));
+        this.admissionQueueTimeout = Integer.parseUnsignedInt(get("ADMISSION_QUEUE_TIMEOUT", "500"));
+        this.admissionRetryAfter = Integer.parseUnsignedInt(get("ADMISSION_RETRY_AFTER", "1"));
+        this.admissionMode = ScanAdmission.Mode.valueOf(get("ADMISSION_MODE", "fixed").toUpperCase(Locale.ROOT));
+        this.admissionMinLimit = Integer.parseUnsignedInt(get("ADMISSION_MIN_LIMIT", "1"));
+        if (admissionMinLimit <= 0)
+            throw new IllegalArgumentException("variable ADMISSION_MIN_LIMIT should be at least 1");
+        if (admissionLimit != 0 && admissionMinLimit > admissionLimit)
+            throw new IllegalArgumentException("variable ADMISSION_MIN_LIMIT should be at most ADMISSION_LIMIT");
+        this.admissionLatencyTarget = Integer.parseUnsignedInt(get("ADMISSION_LATENCY_TARGET", "500"));
+        this.metricsMaxRegisters = Integer.parseUnsignedInt(get("METRICS_MAX_REGISTERS", "20"));
+        this.cacheTimeout = Integer.parseUnsignedInt(get("CACHE_TIMEOUT", "3600"));
+        if (cacheTimeout <= 0)
+            throw new IllegalArgumentException("variable CACHE_TIMEOUT should be at least 1");
+        this.cacheTimeoutError = Integer.parseUnsignedInt(get("CACHE_TIMEOUT_ERROR", "60"));
+        this.profileCacheSize = Integer.parseUnsignedInt(get("PROFILE_CACHE_SIZE", "10000"));
+        this.profileRefreshAhead = Integer.parseUnsignedInt(get("PROFILE_REFRESH_AHEAD", "80"));
+        if (profileRefreshAhead <= 0)
+            throw new IllegalArgumentException("variable PROFILE_REFRESH_AHEAD should be at least 1");
+        if (profileRefreshAhead > 100)
+            throw new IllegalArgumentException("variable PROFILE_REFRESH_AHEAD should be at most 100");
+        this.profileStaleGrace = Integer.parseUnsignedInt(get("PROFILE_STALE_GRACE", "600"));
+        this.profileDb = get("PROFILE_DB", "").trim();
+        this.profileFilterMode = FilterQueries.Mode.valueOf(get("PROFILE_FILTER_MODE", "query").toUpperCase(Locale.ROOT));
+        this.profileWarmupList = Stream.of(get("PROFILE_WARMUP_LIST", "").split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toList();
+        for (String profile : profileWarmupList) {
+            if (!PROFILE_NAME.matcher(profile).matches())
+                throw new IllegalArgumentException("variable PROFILE_WARMUP_LIST should be a comma separated list of agencyId-profile, got: " + profile);
+        }
+        this.profileWarmupParallel = Integer.parseUnsignedInt(get("PROFILE_WARMUP_PARALLEL", "4"));
+        if (profileWarmupParallel <= 0)
+            throw new IllegalArgumentException("variable PROFILE_WARMUP_PARALLEL should be at least 1");
+        this.profileWarmupTimeout = Integer.parseUnsignedInt(get("PROFILE_WARMUP_TIMEOUT", "60"));
+        this.executorMode = ScanExecutor.Mode.valueOf(get("EXECUTOR_MODE", "managed").toUpperCase(Locale.ROOT));
+        this.normalizeMode = Normalizer.Mode.valueOf(get("NORMALIZE_MODE", "remote").toUpperCase(Locale.ROOT));
+        this.normalizeLocalRegisters = Stream.of(get("NORMALIZE_LOCAL_REGISTERS", "").split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toList();
+        this.normalizeVerifyEvery = Integer.parseUnsignedInt(get("NORMALIZE_VERIFY_EVERY", "100"));
+        if (normalizeVerifyEvery <= 0)
+            throw new IllegalArgumentException("variable NORMALIZE_VERIFY_EVERY should be at least 1");
+        this.overFetchWindow = Integer.parseUnsignedInt(get("OVERFETCH_WINDOW", "1000"));
+        if (overFetchWindow <= 0)
+            throw new IllegalArgumentException("variable OVERFETCH_WINDOW should be at least 1");
+        this.overFetchMinSamples = Integer.parseUnsignedInt(get("OVERFETCH_MIN_SAMPLES", "50"));
+        this.overFetchMinExtra = Integer.parseUnsignedInt(get("OVERFETCH_MIN_EXTRA", "2"));
+        this.overFetchMaxFactor = Integer.parseUnsignedInt(get("OVERFETCH_MAX_FACTOR", "4"));
+        if (overFetchMaxFactor <= 0)
+            throw new IllegalArgumentException("variable OVERFETCH_MAX_FACTOR should be at least 1");
+        this.overFetchOverheadMin = Integer.parseUnsignedInt(get("OVERFETCH_OVERHEAD_MIN", "1"));
+        this.overFetchOverheadMax = Integer.parseUnsignedInt(get("OVERFETCH_OVERHEAD_MAX", "10"));
+        if (overFetchOverheadMax < overFetchOverheadMin)
+            throw new IllegalArgumentException("variable OVERFETCH_OVERHEAD_MAX should be at least OVERFETCH_OVERHEAD_MIN");
+        this.overFetchMaxRegisters = Integer.parseUnsignedInt(get("OVERFETCH_MAX_REGISTERS", "10000"));
         vipCore = UriBuilder.fromPath(get("VIPCORE_ENDPOINT"));
     }
 
@@ -109,6 +297,234 @@ public class Config {
         return parallelHitcountRequests;
     }
 
+    public int getParallelHitcountRequestsTotal() {
+        return parallelHitcountRequestsTotal;
+    }
+
+    public int getHitcountAgencyMax() {
+        return hitcountAgencyMax;
+    }
+
+    public int getHitcountBatchSize() {
+        return hitcountBatchSize;
+    }
+
+    public int getHitcountDispatchWindow() {
+        return hitcountDispatchWindow;
+    }
+
+    public int getHitcountDispatchMax() {
+        return hitcountDispatchMax;
+    }
+
+    public int getHitcountCacheSize() {
+        return hitcountCacheSize;
+    }
+
+    public int getHitcountCacheTimeout() {
+        return hitcountCacheTimeout;
+    }
+
+    public int getScanCursorCacheSize() {
+        return scanCursorCacheSize;
+    }
+
+    public int getScanCursorTimeout() {
+        return scanCursorTimeout;
+    }
+
+    public int getPrefetchParallel() {
+        return prefetchParallel;
+    }
+
+    public int getPrefetchCacheSize() {
+        return prefetchCacheSize;
+    }
+
+    public int getPrefetchTimeout() {
+        return prefetchTimeout;
+    }
+
+    public int getNormalizeCacheSize() {
+        return normalizeCacheSize;
+    }
+
+    public int getNormalizeCacheTimeout() {
+        return normalizeCacheTimeout;
+    }
+
+    public int getNormalizeCacheSchemaCheck() {
+        return normalizeCacheSchemaCheck;
+    }
+
+    public int getScanTimeout() {
+        return scanTimeout;
+    }
+
+    public int getScanTimeoutMax() {
+        return scanTimeoutMax;
+    }
+
+    public int getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public int getHedgeMinDelay() {
+        return hedgeMinDelay;
+    }
+
+    public int getHedgeMaxPercent() {
+        return hedgeMaxPercent;
+    }
+
+    public int getHedgeWindow() {
+        return hedgeWindow;
+    }
+
+    public int getCircuitWindow() {
+        return circuitWindow;
+    }
+
+    public int getCircuitMinCalls() {
+        return circuitMinCalls;
+    }
+
+    public int getCircuitFailurePercent() {
+        return circuitFailurePercent;
+    }
+
+    public int getCircuitSlowCall() {
+        return circuitSlowCall;
+    }
+
+    public int getCircuitSlowPercent() {
+        return circuitSlowPercent;
+    }
+
+    public int getCircuitOpenTime() {
+        return circuitOpenTime;
+    }
+
+    public int getCircuitProbes() {
+        return circuitProbes;
+    }
+
+    public int getAdmissionLimit() {
+        return admissionLimit;
+    }
+
+    public int getAdmissionQueue() {
+        return admissionQueue;
+    }
+
+    public int getAdmissionQueueTimeout() {
+        return admissionQueueTimeout;
+    }
+
+    public int getAdmissionRetryAfter() {
+        return admissionRetryAfter;
+    }
+
+    public ScanAdmission.Mode getAdmissionMode() {
+        return admissionMode;
+    }
+
+    public int getAdmissionMinLimit() {
+        return admissionMinLimit;
+    }
+
+    public int getAdmissionLatencyTarget() {
+        return admissionLatencyTarget;
+    }
+
+    public int getMetricsMaxRegisters() {
+        return metricsMaxRegisters;
+    }
+
+    public int getCacheTimeout() {
+        return cacheTimeout;
+    }
+
+    public int getCacheTimeoutError() {
+        return cacheTimeoutError;
+    }
+
+    public int getProfileCacheSize() {
+        return profileCacheSize;
+    }
+
+    public int getProfileRefreshAhead() {
+        return profileRefreshAhead;
+    }
+
+    public int getProfileStaleGrace() {
+        return profileStaleGrace;
+    }
+
+    public String getProfileDb() {
+        return profileDb;
+    }
+
+    public FilterQueries.Mode getProfileFilterMode() {
+        return profileFilterMode;
+    }
+
+    public List<String> getProfileWarmupList() {
+        return profileWarmupList;
+    }
+
+    public int getProfileWarmupParallel() {
+        return profileWarmupParallel;
+    }
+
+    public int getProfileWarmupTimeout() {
+        return profileWarmupTimeout;
+    }
+
+    public ScanExecutor.Mode getExecutorMode() {
+        return executorMode;
+    }
+
+    public Normalizer.Mode getNormalizeMode() {
+        return normalizeMode;
+    }
+
+    public List<String> getNormalizeLocalRegisters() {
+        return normalizeLocalRegisters;
+    }
+
+    public int getNormalizeVerifyEvery() {
+        return normalizeVerifyEvery;
+    }
+
+    public int getOverFetchWindow() {
+        return overFetchWindow;
+    }
+
+    public int getOverFetchMinSamples() {
+        return overFetchMinSamples;
+    }
+
+    public int getOverFetchMinExtra() {
+        return overFetchMinExtra;
+    }
+
+    public int getOverFetchMaxFactor() {
+        return overFetchMaxFactor;
+    }
+
+    public int getOverFetchOverheadMin() {
+        return overFetchOverheadMin;
+    }
+
+    public int getOverFetchOverheadMax() {
+        return overFetchOverheadMax;
+    }
+
+    public int getOverFetchMaxRegisters() {
+        return overFetchMaxRegisters;
+    }
+
     public UriBuilder getVipCore() {
         return vipCore.clone();
     }
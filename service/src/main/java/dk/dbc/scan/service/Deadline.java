@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Point in time a scan should be done by
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public final class Deadline {
+
+    private final long end;
+
+    private Deadline(long end) {
+        this.end = end;
+    }
+
+    /**
+     * Make a deadline
+     *
+     * @param millis number of milliseconds from now
+     * @return deadline
+     */
+    public static Deadline in(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Time left
+     *
+     * @return number of milliseconds until the deadline, 0 if it has passed
+     */
+    public long remaining() {
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()));
+    }
+
+    /**
+     * Time left, for a request where 0 means no limit
+     *
+     * @return number of milliseconds until the deadline, at least 1
+     */
+    public long timeout() {
+        return Math.max(1L, remaining());
+    }
+
+    public boolean expired() {
+        return end - System.nanoTime() <= 0L;
+    }
+
+    /**
+     * Limit a future to the deadline, without waiting for it
+     * <p>
+     * The future itself is left running
+     *
+     * @param <T>    type of value
+     * @param future the future
+     * @return future that completes like the given one, or fails with
+     *         {@link TimeoutException} when the deadline passes
+     */
+    public <T> CompletableFuture<T> bound(CompletableFuture<T> future) {
+        return future.copy().orTimeout(end - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + remaining() + "ms}";
+    }
+}
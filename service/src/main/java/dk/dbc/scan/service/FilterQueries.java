@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for profile filter queries
+ * <p>
+ * Profiles with the same collection identifiers can have filter queries that
+ * differ only in the order (or repetition) of the clauses. In canonical form
+ * they are the same string, so that they share the SolR filterCache and the
+ * service caches.
+ * <p>
+ * With PROFILE_FILTER_MODE=terms a filter query, that only selects
+ * collection identifiers, is replaced by a terms query parser filter, that
+ * SolR doesn't have to parse as a (long) boolean query.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public final class FilterQueries {
+
+    public enum Mode {
+        QUERY, TERMS
+    }
+
+    static final String COLLECTION_IDENTIFIER = "rec.collectionIdentifier";
+
+    private static final Pattern COLLECTION_IDENTIFIER_CLAUSE = Pattern.compile(
+            Pattern.quote(COLLECTION_IDENTIFIER) + ":(?:\"([^\"\\\\]*)\"|([\\w-]+))");
+
+    private FilterQueries() {
+    }
+
+    /**
+     * Make a canonical form of a filter query
+     * <p>
+     * If the filter query is a plain disjunction (clauses separated by OR/||)
+     * the clauses are sorted and deduplicated. Otherwise it is returned
+     * unchanged, except for surrounding whitespace.
+     *
+     * @param filterQuery the filter query (can be null)
+     * @return canonical form
+     */
+    public static String canonical(String filterQuery) {
+        if (filterQuery == null)
+            return null;
+        List<String> clauses = disjunction(filterQuery);
+        if (clauses == null)
+            return filterQuery.trim();
+        return String.join(" OR ", new TreeSet<>(clauses));
+    }
+
+    /**
+     * Make a terms query parser filter from collection identifiers
+     * <p>
+     * This is only possible if the filter query is a disjunction of exactly
+     * these collection identifiers, and none of them contain the terms
+     * separator (comma).
+     *
+     * @param filterQuery           the filter query from the profile
+     * @param collectionIdentifiers the collection identifiers from the
+     *                              profile
+     * @return terms filter or null if the filter query cannot be expressed
+     *         that way
+     */
+    public static String terms(String filterQuery, Collection<String> collectionIdentifiers) {
+        if (filterQuery == null || collectionIdentifiers == null || collectionIdentifiers.isEmpty())
+            return null;
+        List<String> clauses = disjunction(filterQuery);
+        if (clauses == null)
+            return null;
+        Set<String> values = new TreeSet<>();
+        for (String clause : clauses) {
+            Matcher matcher = COLLECTION_IDENTIFIER_CLAUSE.matcher(clause);
+            if (!matcher.matches())
+                return null;
+            values.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+        }
+        if (!values.equals(new TreeSet<>(collectionIdentifiers)) ||
+            values.stream().anyMatch(value -> value.isEmpty() || value.contains(",")))
+            return null;
+        return "{!terms f=" + COLLECTION_IDENTIFIER + "}" + String.join(",", values);
+    }
+
+    /**
+     * Make a short stable identifier of a filter query
+     *
+     * @param filterQuery the filter query (can be null)
+     * @return hex encoded digest of the canonical filter query
+     */
+    public static String fingerprint(String filterQuery) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(String.valueOf(canonical(filterQuery)).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Split a filter query into the clauses of a disjunction
+     *
+     * @param filterQuery the filter query
+     * @return clauses or null if it isn't a plain disjunction
+     */
+    private static List<String> disjunction(String filterQuery) {
+        List<String> tokens = tokens(filterQuery);
+        if (tokens == null || tokens.isEmpty() || tokens.size() % 2 == 0 || tokens.get(0).startsWith("{!"))
+            return null;
+        List<String> clauses = new ArrayList<>();
+        for (int i = 0 ; i < tokens.size() ; i++) {
+            String token = tokens.get(i);
+            boolean operator = token.equals("OR") || token.equals("||");
+            if ((i % 2 == 1) != operator || !operator && isKeyword(token))
+                return null;
+            if (!operator)
+                clauses.add(token);
+        }
+        return clauses;
+    }
+
+    private static boolean isKeyword(String token) {
+        return token.equals("AND") || token.equals("&&") || token.equals("NOT") ||
+               token.equals("OR") || token.equals("||");
+    }
+
+    /**
+     * Split a filter query on whitespace outside quotes and parentheses
+     *
+     * @param filterQuery the filter query
+     * @return tokens or null if quotes or parentheses are unbalanced
+     */
+    private static List<String> tokens(String filterQuery) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        int depth = 0;
+        for (int i = 0 ; i < filterQuery.length() ; i++) {
+            char c = filterQuery.charAt(i);
+            if (c == '\\' && i + 1 < filterQuery.length()) {
+                token.append(c).append(filterQuery.charAt(++i));
+            } else if (quoted) {
+                token.append(c);
+                quoted = c != '"';
+            } else if (Character.isWhitespace(c) && depth == 0) {
+                if (token.length() != 0)
+                    tokens.add(token.toString());
+                token.setLength(0);
+            } else {
+                if (c == '"')
+                    quoted = true;
+                else if (c == '(')
+                    depth++;
+                else if (c == ')' && --depth < 0)
+                    return null;
+                token.append(c);
+            }
+        }
+        if (quoted || depth != 0)
+            return null;
+        if (token.length() != 0)
+            tokens.add(token.toString());
+        return tokens;
+    }
+}
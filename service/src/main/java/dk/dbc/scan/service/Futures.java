@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Helpers for futures, that pass cancellation on to the request behind them
+ * <p>
+ * Cancelling a dependent {@link CompletableFuture} doesn't cancel the future
+ * it depends on, so a stage built on an http request would leave the request
+ * running.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Cancel a source, when a future that depends on it is completed first
+     * <p>
+     * That is when it is cancelled or times out
+     *
+     * @param <T>       type of value
+     * @param dependent the future that is handed out
+     * @param source    what it depends on
+     * @return the dependent future
+     */
+    public static <T> CompletableFuture<T> cancelling(CompletableFuture<T> dependent, Future<?> source) {
+        dependent.whenComplete((value, ex) -> {
+            if (!source.isDone())
+                source.cancel(true);
+        });
+        return dependent;
+    }
+
+    /**
+     * Map the value of a future, cancelling the source if the result is
+     * cancelled or times out
+     *
+     * @param <T>    type of source value
+     * @param <R>    type of result
+     * @param source the future
+     * @param mapper how to map the value
+     * @return future mapped value
+     */
+    public static <T, R> CompletableFuture<R> thenApply(CompletableFuture<T> source, Function<? super T, ? extends R> mapper) {
+        return cancelling(source.thenApply(mapper), source);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+/**
+ * Decide when to send a duplicate of a slow SolR request
+ * <p>
+ * For every kind of request (terms/select) the latency of the last
+ * HEDGE_WINDOW requests is kept. When a request hasn't answered within
+ * HEDGE_PERCENTILE of those (but at least HEDGE_MIN_DELAY ms), a duplicate is
+ * sent, and the first answer is used. To keep hedging from adding load when
+ * everything is slow, only HEDGE_MAX_PERCENT of the requests can be hedged;
+ * every request earns a fraction of a hedge, and a hedge spends a whole one.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class Hedger {
+
+    private static final double MAX_BUDGET = 10.0;
+
+    @Inject
+    Config config;
+
+    private final ConcurrentHashMap<String, Latencies> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong won = new AtomicLong();
+    private final AtomicLong capped = new AtomicLong();
+    private double budget = 0.0;
+
+    public Hedger() {
+    }
+
+    private Hedger(Config config) {
+        this.config = config;
+    }
+
+    static Hedger instance(Config config) {
+        return new Hedger(config);
+    }
+
+    /**
+     * How long to wait before hedging a request
+     * <p>
+     * Every call is counted as a request towards the hedge budget
+     *
+     * @param kind type of request
+     * @return milliseconds or -1 if the request shouldn't be hedged
+     */
+    public long delay(String kind) {
+        if (config.getHedgePercentile() == 0)
+            return -1L;
+        synchronized (this) {
+            budget = Math.min(MAX_BUDGET, budget + config.getHedgeMaxPercent() / 100.0);
+        }
+        long threshold = latencies(kind).threshold;
+        if (threshold < 0)
+            return -1L;
+        return Math.max(threshold, config.getHedgeMinDelay());
+    }
+
+    /**
+     * Take a hedge from the budget
+     *
+     * @return if a hedge may be sent
+     */
+    public boolean tryHedge() {
+        synchronized (this) {
+            if (budget >= 1.0) {
+                budget -= 1.0;
+                fired.incrementAndGet();
+                return true;
+            }
+        }
+        capped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Record the latency of a successful request
+     *
+     * @param kind   type of request
+     * @param millis latency
+     */
+    public void record(String kind, long millis) {
+        if (config.getHedgePercentile() != 0)
+            latencies(kind).add(millis);
+    }
+
+    /**
+     * Record that a hedge answered before the original request
+     */
+    public void won() {
+        won.incrementAndGet();
+    }
+
+    private Latencies latencies(String kind) {
+        return latencies.computeIfAbsent(kind, k -> new Latencies(config.getHedgeWindow(), config.getHedgePercentile()));
+    }
+
+    @Gauge(name = "hedgesFired", unit = MetricUnits.NONE,
+           description = "Number of duplicate SolR requests sent")
+    public long getFired() {
+        return fired.get();
+    }
+
+    @Gauge(name = "hedgesWon", unit = MetricUnits.NONE,
+           description = "Number of duplicate SolR requests that answered first")
+    public long getWon() {
+        return won.get();
+    }
+
+    @Gauge(name = "hedgesCapped", unit = MetricUnits.NONE,
+           description = "Number of duplicate SolR requests not sent because of the rate cap")
+    public long getCapped() {
+        return capped.get();
+    }
+
+    /**
+     * Ring buffer of latencies, where the percentile is recomputed every
+     * tenth of the window
+     */
+    private static final class Latencies {
+
+        private final long[] samples;
+        private final int percentile;
+        private int next;
+        private int filled;
+        private int sinceUpdate;
+        private volatile long threshold;
+
+        private Latencies(int window, int percentile) {
+            this.samples = new long[window];
+            this.percentile = percentile;
+            this.threshold = -1L;
+        }
+
+        private synchronized void add(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            filled = Math.min(filled + 1, samples.length);
+            if (++sinceUpdate >= Math.max(1, samples.length / 10)) {
+                sinceUpdate = 0;
+                long[] sorted = Arrays.copyOf(samples, filled);
+                Arrays.sort(sorted);
+                threshold = sorted[Math.max(0, (int) Math.ceil(sorted.length * percentile / 100.0) - 1)];
+            }
+        }
+    }
+}
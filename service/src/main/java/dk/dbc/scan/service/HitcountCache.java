@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cluster-wide cache of hitcounts
+ * <p>
+ * Keyed by register, a fingerprint of the canonical filter query and the
+ * term (as returned from the terms request, i.e. normalized). The entries
+ * expire after HITCOUNT_CACHE_TIMEOUT seconds, and the cache is bounded to
+ * HITCOUNT_CACHE_SIZE entries.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class HitcountCache {
+
+    private static final Logger log = LoggerFactory.getLogger(HitcountCache.class);
+
+    static final String CACHE_NAME = "hitcount";
+
+    @Inject
+    Config config;
+
+    @Inject
+    CacheManager cacheManager;
+
+    private Cache<String, Long> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public HitcountCache() {
+    }
+
+    private HitcountCache(Config config, CacheManager cacheManager) {
+        this.config = config;
+        this.cacheManager = cacheManager;
+        init();
+    }
+
+    static HitcountCache instance(Config config, CacheManager cacheManager) {
+        return new HitcountCache(config, cacheManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (cacheManager == null || config.getHitcountCacheSize() == 0) {
+            log.info("Hitcount cache is disabled");
+            return;
+        }
+        cache = Caches.bounded(cacheManager, CACHE_NAME, String.class, Long.class,
+                               config.getHitcountCacheSize(), config.getHitcountCacheTimeout());
+    }
+
+    /**
+     * Get the hitcount of some terms, looking up only the missing ones,
+     * without blocking on the lookup
+     * <p>
+     * Cancelling the result cancels the loading of the missing hitcounts
+     *
+     * @param register    Name of the field
+     * @param terms       Normalized search strings (from terms)
+     * @param filterQuery profile restrictions
+     * @param loader      How to get hitcounts for the terms that are not in
+     *                    the cache
+     * @return future map of term to number of hits in said profile
+     */
+    public CompletableFuture<Map<String, Long>> getHitCountsAsync(String register, List<String> terms, String filterQuery, AsyncLoader loader) {
+        if (cache == null)
+            return loader.load(terms);
+        String prefix = register + "|" + FilterQueries.fingerprint(filterQuery) + "|";
+        HashMap<String, Long> hitCounts = cached(prefix, terms);
+        List<String> missing = missing(register, terms, hitCounts);
+        if (missing.isEmpty())
+            return CompletableFuture.completedFuture(hitCounts);
+        return Futures.thenApply(loader.load(missing), loaded -> {
+            hitCounts.putAll(loaded);
+            store(prefix, loaded);
+            return hitCounts;
+        });
+    }
+
+    private HashMap<String, Long> cached(String prefix, List<String> terms) {
+        Set<String> keys = terms.stream()
+                .map(term -> prefix + term)
+                .collect(Collectors.toSet());
+        Map<String, Long> cached = Map.of();
+        try {
+            cached = cache.getAll(keys);
+        } catch (RuntimeException ex) {
+            log.warn("Error reading from hitcount cache: {}", ex.getMessage());
+            log.debug("Error reading from hitcount cache: ", ex);
+        }
+        HashMap<String, Long> hitCounts = new HashMap<>();
+        for (String term : terms) {
+            Long hitCount = cached.get(prefix + term);
+            if (hitCount != null)
+                hitCounts.put(term, hitCount);
+        }
+        return hitCounts;
+    }
+
+    private List<String> missing(String register, List<String> terms, Map<String, Long> hitCounts) {
+        List<String> missing = terms.stream()
+                .filter(term -> !hitCounts.containsKey(term))
+                .toList();
+        hits.addAndGet(hitCounts.size());
+        misses.addAndGet(missing.size());
+        log.trace("hitcount cache hits: {}, misses: {}", hitCounts.size(), missing.size());
+        new ScanEvents.CacheEvent().end("hitcount", register, hitCounts.size(), missing.size());
+        return missing;
+    }
+
+    private void store(String prefix, Map<String, Long> loaded) {
+        try {
+            cache.putAll(loaded.entrySet().stream()
+                    .collect(Collectors.toMap(e -> prefix + e.getKey(), Map.Entry::getValue)));
+        } catch (RuntimeException ex) {
+            log.warn("Error writing to hitcount cache: {}", ex.getMessage());
+            log.debug("Error writing to hitcount cache: ", ex);
+        }
+    }
+
+    @Gauge(name = "hits", unit = MetricUnits.NONE,
+           description = "Number of hitcounts taken from the cache")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Gauge(name = "misses", unit = MetricUnits.NONE,
+           description = "Number of hitcounts not found in the cache")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Gauge(name = "evictions", unit = MetricUnits.NONE,
+           description = "Number of hitcounts evicted from the cache (on this node)")
+    public long getEvictions() {
+        return Caches.evictions(cache);
+    }
+
+    @FunctionalInterface
+    public interface AsyncLoader {
+
+        CompletableFuture<Map<String, Long>> load(List<String> terms);
+    }
+}
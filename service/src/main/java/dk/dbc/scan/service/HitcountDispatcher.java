@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collect hitcount lookups from concurrent scans into fewer SolR requests
+ * <p>
+ * Lookups for the same register and filter query are held for up to
+ * HITCOUNT_DISPATCH_WINDOW milliseconds, or until HITCOUNT_DISPATCH_MAX
+ * distinct terms are pending, and then sent as one request. A lookup that
+ * would take the request past HITCOUNT_DISPATCH_MAX terms sends the pending
+ * lookups, and starts a new request (a single lookup is never split). Every
+ * caller gets the counts for its own terms. With a window of 0 every lookup is sent
+ * right away. A request is cancelled when every lookup in it has been
+ * cancelled.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class HitcountDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(HitcountDispatcher.class);
+
+    @Inject
+    Config config;
+
+    @Inject
+    SolrApi solr;
+
+    private final ConcurrentHashMap<String, Group> groups = new ConcurrentHashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+
+    public HitcountDispatcher() {
+    }
+
+    private HitcountDispatcher(Config config, SolrApi solr) {
+        this.config = config;
+        this.solr = solr;
+    }
+
+    static HitcountDispatcher instance(Config config, SolrApi solr) {
+        return new HitcountDispatcher(config, solr);
+    }
+
+    /**
+     * Get the hitcount for a number of terms
+     *
+     * @param register    Name of the field
+     * @param terms       Normalized search strings (from terms)
+     * @param filterQuery profile restrictions
+     * @param timeAllowed Number of milliseconds SolR may spend, 0 for no limit
+     * @param executor    Where to run blocking requests
+     * @return future map of term to number of hits in said profile
+     */
+    public CompletableFuture<Map<String, Long>> getHitCounts(String register, List<String> terms, String filterQuery, long timeAllowed, Executor executor) {
+        lookups.incrementAndGet();
+        int window = config.getHitcountDispatchWindow();
+        if (window == 0) {
+            requests.incrementAndGet();
+            return solr.getHitCountsAsync(register, terms, filterQuery, timeAllowed, executor);
+        }
+        String key = register + "|" + filterQuery;
+        Lookup lookup = new Lookup(terms);
+        ArrayList<Group> full = new ArrayList<>(2);
+        groups.compute(key, (k, group) -> {
+            int max = config.getHitcountDispatchMax();
+            if (group != null && group.terms.size() + group.added(lookup) > max) {
+                full.add(group);
+                group = null;
+            }
+            if (group == null) {
+                Group created = new Group(register, filterQuery, executor);
+                CompletableFuture.delayedExecutor(window, TimeUnit.MILLISECONDS, executor)
+                        .execute(() -> {
+                            if (groups.remove(k, created))
+                                send(created);
+                        });
+                group = created;
+            }
+            group.add(lookup, timeAllowed);
+            if (group.terms.size() >= max) {
+                full.add(group);
+                return null;
+            }
+            return group;
+        });
+        full.forEach(this::send);
+        return lookup.future;
+    }
+
+    private void send(Group group) {
+        if (group.abandoned()) {
+            log.trace("Dropping {} cancelled lookups", group.lookups.size());
+            return;
+        }
+        requests.incrementAndGet();
+        log.trace("Dispatching {} lookups with {} terms", group.lookups.size(), group.terms.size());
+        CompletableFuture<Map<String, Long>> request;
+        try {
+            request = solr.getHitCountsAsync(group.register, new ArrayList<>(group.terms), group.filterQuery, group.timeAllowed, group.executor);
+        } catch (RuntimeException ex) {
+            request = CompletableFuture.failedFuture(ex);
+        }
+        // Abort the request, when no one wants the counts anymore
+        CompletableFuture<Map<String, Long>> sent = request;
+        for (Lookup lookup : group.lookups) {
+            lookup.future.whenComplete((hitCounts, ex) -> {
+                if (lookup.future.isCancelled() && group.abandoned())
+                    sent.cancel(true);
+            });
+        }
+        request.whenComplete((hitCounts, ex) -> {
+            for (Lookup lookup : group.lookups) {
+                if (ex != null) {
+                    lookup.future.completeExceptionally(ex);
+                } else {
+                    HashMap<String, Long> mine = new HashMap<>();
+                    for (String term : lookup.terms) {
+                        Long hitCount = hitCounts.get(term);
+                        if (hitCount != null)
+                            mine.put(term, hitCount);
+                    }
+                    lookup.future.complete(mine);
+                }
+            }
+        });
+    }
+
+    @Gauge(name = "lookups", unit = MetricUnits.NONE,
+           description = "Number of hitcount lookups from scans")
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    @Gauge(name = "requests", unit = MetricUnits.NONE,
+           description = "Number of hitcount requests sent to SolR")
+    public long getRequests() {
+        return requests.get();
+    }
+
+    private static final class Lookup {
+
+        private final List<String> terms;
+        private final CompletableFuture<Map<String, Long>> future;
+
+        private Lookup(List<String> terms) {
+            this.terms = terms;
+            this.future = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * Lookups waiting to be sent together (only modified while in the
+     * groups map)
+     */
+    private static final class Group {
+
+        private final String register;
+        private final String filterQuery;
+        private final Executor executor;
+        private final List<Lookup> lookups;
+        private final LinkedHashSet<String> terms;
+        private long timeAllowed;
+
+        private Group(String register, String filterQuery, Executor executor) {
+            this.register = register;
+            this.filterQuery = filterQuery;
+            this.executor = executor;
+            this.lookups = new ArrayList<>();
+            this.terms = new LinkedHashSet<>();
+            this.timeAllowed = 0L;
+        }
+
+        /**
+         * If every lookup has been cancelled
+         *
+         * @return if the request isn't needed
+         */
+        private boolean abandoned() {
+            return lookups.stream().allMatch(lookup -> lookup.future.isCancelled());
+        }
+
+        /**
+         * Number of terms a lookup would add
+         *
+         * @param lookup the lookup
+         * @return number of terms that aren't pending already
+         */
+        private int added(Lookup lookup) {
+            return (int) lookup.terms.stream()
+                    .filter(term -> !terms.contains(term))
+                    .distinct()
+                    .count();
+        }
+
+        private void add(Lookup lookup, long timeAllowed) {
+            lookups.add(lookup);
+            terms.addAll(lookup.terms);
+            // The longest time allowed (0 is unlimited), each scan stops waiting at its own deadline
+            if (lookups.size() == 1 ||
+                this.timeAllowed != 0L && ( timeAllowed == 0L || timeAllowed > this.timeAllowed ))
+                this.timeAllowed = timeAllowed;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+/**
+ * Limit the number of hitcount requests sent to SolR
+ * <p>
+ * There's a service-wide pool of permits shared by all scans, and every scan
+ * has its own (smaller) cap, so that one request cannot take the entire pool.
+ * A permit has to be acquired before a hitcount request is submitted, and
+ * released when it is completed.
+ * <p>
+ * When the pool is exhausted, waiting scans are queued per agency, and freed
+ * permits are handed to the agencies in turn (round-robin), so that an agency
+ * with many scans cannot starve the others. An agency can hold at most
+ * HITCOUNT_AGENCY_MAX permits.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class HitcountLimiter {
+
+    @Inject
+    Config config;
+
+    private int total;
+    private int available;
+    private int waiting;
+    private final HashMap<String, Agency> agencies = new HashMap<>();
+    private final ArrayDeque<Agency> ready = new ArrayDeque<>();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public HitcountLimiter() {
+    }
+
+    private HitcountLimiter(Config config) {
+        this.config = config;
+        init();
+    }
+
+    static HitcountLimiter instance(Config config) {
+        return new HitcountLimiter(config);
+    }
+
+    @PostConstruct
+    public void init() {
+        this.total = config.getParallelHitcountRequestsTotal();
+        this.available = total;
+    }
+
+    /**
+     * Make a limit for a single scan request
+     *
+     * @param agencyId the agency the scan is for
+     * @return per request limit, that also takes from the global pool
+     */
+    public RequestLimit forRequest(String agencyId) {
+        return new RequestLimit(config.getParallelHitcountRequests(), agencyId);
+    }
+
+    /**
+     * Number of permits that are free in the service-wide pool
+     *
+     * @return free permits
+     */
+    public synchronized int getPermitsAvailable() {
+        return available;
+    }
+
+    /**
+     * Queueing per agency, for the agencies that have used hitcount permits
+     *
+     * @return map of agency to queue statistics
+     */
+    public synchronized Map<String, AgencyQueue> agencies() {
+        TreeMap<String, AgencyQueue> queues = new TreeMap<>();
+        agencies.forEach((agencyId, agency) -> queues.put(agencyId, agency.queue()));
+        return queues;
+    }
+
+    @Gauge(name = "permitsInUse", unit = MetricUnits.NONE,
+           description = "Number of hitcount requests in flight across all scans")
+    public synchronized int getPermitsInUse() {
+        return total - available;
+    }
+
+    @Gauge(name = "permitsWaiting", unit = MetricUnits.NONE,
+           description = "Number of scans waiting for a hitcount permit")
+    public synchronized int getPermitsWaiting() {
+        return waiting;
+    }
+
+    @Gauge(name = "permitWaitTime", unit = MetricUnits.MILLISECONDS,
+           description = "Accumulated time spent waiting for a hitcount permit")
+    public long getPermitWaitTime() {
+        return waitNanos.get() / 1_000_000L;
+    }
+
+    private synchronized Agency agency(String agencyId) {
+        return agencies.computeIfAbsent(agencyId, Agency::new);
+    }
+
+    /**
+     * Take a permit from the pool, without waiting
+     * <p>
+     * Only if no one is queued, so that it doesn't jump ahead of them
+     *
+     * @param agency the agency to take it for
+     * @return if a permit was taken
+     */
+    private synchronized boolean tryTake(Agency agency) {
+        if (available == 0 || waiting != 0 || agency.inUse >= config.getHitcountAgencyMax())
+            return false;
+        available--;
+        agency.inUse++;
+        return true;
+    }
+
+    /**
+     * Take a permit from the pool, waiting for it in the agency's queue
+     * <p>
+     * The wait doesn't hold a thread, a waiter that isn't granted a permit
+     * before the deadline is taken out of the queue
+     *
+     * @param agency   the agency to take it for
+     * @param deadline when to give up
+     * @return future that is true if a permit was taken before the deadline
+     */
+    private CompletableFuture<Boolean> take(Agency agency, Deadline deadline) {
+        if (tryTake(agency))
+            return CompletableFuture.completedFuture(true);
+        long queued = System.nanoTime();
+        CompletableFuture<Void> granted = new CompletableFuture<>();
+        synchronized (this) {
+            if (agency.waiters.isEmpty())
+                ready.add(agency);
+            agency.waiters.add(granted);
+            waiting++;
+        }
+        grant();
+        CompletableFuture.delayedExecutor(deadline.remaining(), TimeUnit.MILLISECONDS)
+                .execute(() -> {
+                    boolean removed;
+                    synchronized (this) {
+                        removed = agency.waiters.remove(granted);
+                        if (removed) {
+                            if (agency.waiters.isEmpty())
+                                ready.remove(agency);
+                            waiting--;
+                        }
+                    }
+                    if (removed)
+                        granted.completeExceptionally(new TimeoutException("Waiting for hitcount permit"));
+                });
+        return granted.handle((v, ex) -> {
+            agency.waited(System.nanoTime() - queued);
+            return ex == null;
+        });
+    }
+
+    /**
+     * Take a permit for a duplicate (hedged) hitcount request, without
+     * waiting
+     * <p>
+     * The request may be shared by scans from several agencies, so it isn't
+     * counted against any of them. A permit is only taken if no scan is
+     * waiting for one.
+     *
+     * @return if a permit was taken
+     */
+    public synchronized boolean tryTakeHedge() {
+        if (available == 0 || waiting != 0)
+            return false;
+        available--;
+        return true;
+    }
+
+    /**
+     * Return a permit taken by {@link #tryTakeHedge()}
+     */
+    public void releaseHedge() {
+        synchronized (this) {
+            available++;
+        }
+        grant();
+    }
+
+    private void give(Agency agency) {
+        synchronized (this) {
+            available++;
+            agency.inUse--;
+        }
+        grant();
+    }
+
+    /**
+     * Hand free permits to queued agencies in turn, skipping agencies that
+     * hold their max
+     */
+    private void grant() {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            int max = config.getHitcountAgencyMax();
+            int skipped = 0;
+            while (available > 0 && skipped < ready.size()) {
+                Agency agency = ready.poll();
+                if (agency.inUse >= max) {
+                    ready.add(agency);
+                    skipped++;
+                    continue;
+                }
+                available--;
+                agency.inUse++;
+                waiting--;
+                granted.add(agency.waiters.poll());
+                if (!agency.waiters.isEmpty())
+                    ready.add(agency);
+                skipped = 0;
+            }
+        }
+        granted.forEach(future -> future.complete(null));
+    }
+
+    @SuppressFBWarnings()
+    public static class AgencyQueue {
+
+        public int inUse;
+
+        public int waiting;
+
+        public long waits;
+
+        public long waitTime;
+
+        public long maxWaitTime;
+
+        public AgencyQueue() {
+        }
+
+        public AgencyQueue(int inUse, int waiting, long waits, long waitTime, long maxWaitTime) {
+            this.inUse = inUse;
+            this.waiting = waiting;
+            this.waits = waits;
+            this.waitTime = waitTime;
+            this.maxWaitTime = maxWaitTime;
+        }
+    }
+
+    /**
+     * Permits held by, and scans queued for, an agency (guarded by the
+     * limiter)
+     */
+    private final class Agency {
+
+        private final String agencyId;
+        private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private int inUse;
+        private long waits;
+        private long waitNanos;
+        private long maxWaitNanos;
+
+        private Agency(String agencyId) {
+            this.agencyId = agencyId;
+        }
+
+        private void waited(long nanos) {
+            HitcountLimiter.this.waitNanos.addAndGet(nanos);
+            synchronized (HitcountLimiter.this) {
+                waits++;
+                waitNanos += nanos;
+                maxWaitNanos = Math.max(maxWaitNanos, nanos);
+            }
+        }
+
+        private AgencyQueue queue() {
+            return new AgencyQueue(inUse, waiters.size(), waits,
+                                   TimeUnit.NANOSECONDS.toMillis(waitNanos),
+                                   TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+        }
+
+        @Override
+        public String toString() {
+            return agencyId;
+        }
+    }
+
+    public class RequestLimit {
+
+        private final Semaphore local;
+        private final String agencyId;
+        private Agency agency;
+
+        private RequestLimit(int max, String agencyId) {
+            this.local = new Semaphore(max);
+            this.agencyId = agencyId;
+            this.agency = null;
+        }
+
+        /**
+         * The agency is registered when the scan gets to hitcounts, that is
+         * after the profile has been validated
+         */
+        private Agency agency() {
+            if (agency == null)
+                agency = HitcountLimiter.this.agency(agencyId);
+            return agency;
+        }
+
+        /**
+         * Wait for a permit from the global pool, without holding a thread
+         * <p>
+         * The permits of the request are held by its own hitcount requests,
+         * so the caller should wait for those rather than for a permit. If
+         * the request has none free, this fails right away.
+         *
+         * @param deadline when to give up
+         * @return future that is true if a permit was acquired before the
+         *         deadline
+         */
+        public CompletableFuture<Boolean> acquireAsync(Deadline deadline) {
+            if (!local.tryAcquire())
+                return CompletableFuture.completedFuture(false);
+            return take(agency(), deadline)
+                    .thenApply(acquired -> {
+                        if (!acquired)
+                            local.release();
+                        return acquired;
+                    });
+        }
+
+        /**
+         * Take a permit, if one is available right now
+         * <p>
+         * This is used when the caller has other work to do, instead of
+         * waiting for a permit
+         *
+         * @return if a permit was acquired
+         */
+        public boolean tryAcquire() {
+            if (!local.tryAcquire())
+                return false;
+            if (!tryTake(agency())) {
+                local.release();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Return a permit to the request and the global pool
+         */
+        public void release() {
+            give(agency());
+            local.release();
+        }
+    }
+}
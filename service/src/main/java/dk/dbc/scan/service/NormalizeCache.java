@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cluster-wide cache of field-analysis results
+ * <p>
+ * Keyed by register and the raw term. If NORMALIZE_CACHE_SCHEMA_CHECK is set,
+ * the schema version in SolR is checked in the background at most that
+ * often, and when it changes, the cached values are no longer used, since the
+ * key includes the schema version. Until the version is known, the cache is
+ * bypassed.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class NormalizeCache {
+
+    private static final Logger log = LoggerFactory.getLogger(NormalizeCache.class);
+
+    static final String CACHE_NAME = "normalize";
+
+    @Inject
+    Config config;
+
+    @Inject
+    SolrApi solr;
+
+    @Inject
+    CacheManager cacheManager;
+
+    @Inject
+    ScanExecutor executor;
+
+    private static final int UNKNOWN = -1;
+
+    private Cache<String, String> cache;
+    private volatile int schemaVersion = 0;
+    private final AtomicLong nextSchemaCheck = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public NormalizeCache() {
+    }
+
+    private NormalizeCache(Config config, SolrApi solr, CacheManager cacheManager, ScanExecutor executor) {
+        this.config = config;
+        this.solr = solr;
+        this.cacheManager = cacheManager;
+        this.executor = executor;
+        init();
+    }
+
+    static NormalizeCache instance(Config config, SolrApi solr, CacheManager cacheManager, ScanExecutor executor) {
+        return new NormalizeCache(config, solr, cacheManager, executor);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (cacheManager == null || config.getNormalizeCacheSize() == 0) {
+            log.info("Normalize cache is disabled");
+            return;
+        }
+        cache = Caches.bounded(cacheManager, CACHE_NAME, String.class, String.class,
+                               config.getNormalizeCacheSize(), config.getNormalizeCacheTimeout());
+        if (config.getNormalizeCacheSchemaCheck() != 0) {
+            schemaVersion = UNKNOWN;
+            schemaVersion(); // Start the first check
+        }
+    }
+
+    /**
+     * Get the normalized value of a term
+     *
+     * @param register Name of the field
+     * @param term     Raw term from the user
+     * @param loader   How to normalize if the value isn't cached
+     * @return normalized term
+     * @throws SolrServerException If the loader throws it
+     * @throws IOException         If the loader throws it
+     */
+    public String normalize(String register, String term, Loader loader) throws SolrServerException, IOException {
+        int version = schemaVersion();
+        if (cache == null || version == UNKNOWN)
+            return loader.load();
+        String key = version + "|" + register + "|" + term;
+        String normalized = null;
+        try {
+            normalized = cache.get(key);
+        } catch (RuntimeException ex) {
+            log.warn("Error reading from normalize cache: {}", ex.getMessage());
+            log.debug("Error reading from normalize cache: ", ex);
+        }
+        if (normalized != null) {
+            hits.incrementAndGet();
+            new ScanEvents.CacheEvent().end("normalize", register, 1, 0);
+            return normalized;
+        }
+        misses.incrementAndGet();
+        new ScanEvents.CacheEvent().end("normalize", register, 0, 1);
+        normalized = loader.load();
+        try {
+            cache.put(key, normalized);
+        } catch (RuntimeException ex) {
+            log.warn("Error writing to normalize cache: {}", ex.getMessage());
+            log.debug("Error writing to normalize cache: ", ex);
+        }
+        return normalized;
+    }
+
+    /**
+     * The schema version to use in cache keys
+     * <p>
+     * When the check interval has passed, one request starts a check in the
+     * background. Until it completes, the last known version is used.
+     *
+     * @return version of schema, or UNKNOWN if it hasn't been fetched yet
+     */
+    private int schemaVersion() {
+        int interval = config.getNormalizeCacheSchemaCheck();
+        if (interval == 0 || cache == null)
+            return schemaVersion;
+        long now = System.currentTimeMillis();
+        long next = nextSchemaCheck.get();
+        if (now >= next && nextSchemaCheck.compareAndSet(next, now + interval * 1000L))
+            executor.blocking().execute(this::checkSchemaVersion);
+        return schemaVersion;
+    }
+
+    /**
+     * Ask SolR for the schema version, if it fails the old version is kept
+     */
+    void checkSchemaVersion() {
+        try {
+            int version = solr.schemaVersion();
+            int old = schemaVersion;
+            if (version != old) {
+                if (old == UNKNOWN) {
+                    log.info("Schema version is {}", version);
+                } else {
+                    log.info("Schema version changed from {} to {}", old, version);
+                    invalidations.incrementAndGet();
+                }
+                schemaVersion = version;
+            }
+        } catch (SolrServerException | IOException | RuntimeException ex) {
+            log.warn("Could not get schema version: {}", ex.getMessage());
+            log.debug("Could not get schema version: ", ex);
+        }
+    }
+
+    @Gauge(name = "hits", unit = MetricUnits.NONE,
+           description = "Number of normalizations taken from the cache")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Gauge(name = "misses", unit = MetricUnits.NONE,
+           description = "Number of normalizations not found in the cache")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Gauge(name = "evictions", unit = MetricUnits.NONE,
+           description = "Number of normalizations evicted from the cache (on this node)")
+    public long getEvictions() {
+        return Caches.evictions(cache);
+    }
+
+    @Gauge(name = "schemaVersion", unit = MetricUnits.NONE,
+           description = "Version of the SolR schema used in cache keys, -1 if it isn't known yet")
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    @Gauge(name = "invalidations", unit = MetricUnits.NONE,
+           description = "Number of times the cache has been invalidated by a schema change")
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+
+        String load() throws SolrServerException, IOException;
+    }
+}
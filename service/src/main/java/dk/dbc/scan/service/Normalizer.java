@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.util.NamedList;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Normalize a term the way SolR indexes it
+ * <p>
+ * In mode "remote" SolR is asked using a field-analysis request. In mode
+ * "local" the index analyzer of the register is built from the SolR schema,
+ * and run in process. Registers where the analyzer cannot be built (unknown
+ * factories, resource files) are normalized remotely. In mode "verify" every
+ * NORMALIZE_VERIFY_EVERY'th term is normalized both ways, and if they differ,
+ * the register is normalized remotely from then on.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class Normalizer {
+
+    private static final Logger log = LoggerFactory.getLogger(Normalizer.class);
+
+    public enum Mode {
+        REMOTE, LOCAL, VERIFY
+    }
+
+    @Inject
+    Config config;
+
+    @Inject
+    SolrApi solr;
+
+    private final ConcurrentHashMap<String, Optional<Analyzer>> analyzers = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong local = new AtomicLong();
+    private final AtomicLong remote = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    public Normalizer() {
+    }
+
+    private Normalizer(Config config, SolrApi solr) {
+        this.config = config;
+        this.solr = solr;
+    }
+
+    static Normalizer instance(Config config, SolrApi solr) {
+        return new Normalizer(config, solr);
+    }
+
+    public void startup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        // Force construction at deploy time
+    }
+
+    @PostConstruct
+    public void init() {
+        if (config.getNormalizeMode() == Mode.REMOTE)
+            return;
+        for (String register : config.getNormalizeLocalRegisters()) {
+            if (analyzer(register) == null)
+                log.warn("Could not load analyzer for register: {} at startup", register);
+        }
+    }
+
+    /**
+     * Normalize a term
+     *
+     * @param register Name of the field
+     * @param term     Raw term from the user
+     * @param timeout  Number of milliseconds a SolR request may take, 0 for
+     *                 no limit
+     * @return normalized term
+     * @throws SolrServerException If the SolR is down or the field-analysis
+     *                             request is malformed
+     * @throws IOException         If communication with the SolR fails
+     */
+    public String normalize(String register, String term, long timeout) throws SolrServerException, IOException {
+        Mode mode = config.getNormalizeMode();
+        if (mode == Mode.REMOTE)
+            return remote(register, term, timeout);
+        Analyzer analyzer = analyzer(register);
+        String localValue = analyzer == null ? null : analyze(analyzer, register, term);
+        if (localValue == null)
+            return remote(register, term, timeout);
+        if (mode == Mode.VERIFY && calls.incrementAndGet() % config.getNormalizeVerifyEvery() == 0) {
+            String remoteValue = remote(register, term, timeout);
+            if (!remoteValue.equals(localValue)) {
+                log.warn("Local normalization of: {} in: {} gave: {}, SolR gave: {} - using remote normalization for register",
+                         term, register, localValue, remoteValue);
+                mismatches.incrementAndGet();
+                analyzers.put(register, Optional.empty());
+            }
+            return remoteValue;
+        }
+        local.incrementAndGet();
+        return localValue;
+    }
+
+    private String remote(String register, String term, long timeout) throws SolrServerException, IOException {
+        remote.incrementAndGet();
+        return solr.normalize(register, term, timeout);
+    }
+
+    /**
+     * Get the analyzer for a register
+     * <p>
+     * If the schema cannot be read, null is returned and it is retried next
+     * time. If the analyzer cannot be built, the register is remembered as
+     * remote only.
+     *
+     * @param register Name of the field
+     * @return analyzer or null if it should be normalized remotely
+     */
+    private Analyzer analyzer(String register) {
+        Optional<Analyzer> analyzer = analyzers.get(register);
+        if (analyzer != null)
+            return analyzer.orElse(null);
+        NamedList<Object> fieldType;
+        try {
+            fieldType = solr.fieldType(register);
+        } catch (SolrServerException | IOException | RuntimeException ex) {
+            log.warn("Could not read schema for: {}: {}", register, ex.getMessage());
+            log.debug("Could not read schema for: {}: ", register, ex);
+            return null;
+        }
+        try {
+            analyzer = Optional.of(build(fieldType));
+            log.info("Normalizing register: {} locally", register);
+        } catch (IOException | RuntimeException ex) {
+            log.info("Cannot normalize register: {} locally: {}", register, ex.getMessage());
+            log.debug("Cannot normalize register: {} locally: ", register, ex);
+            analyzer = Optional.empty();
+        }
+        analyzers.putIfAbsent(register, analyzer);
+        return analyzers.get(register).orElse(null);
+    }
+
+    /**
+     * Run the analyzer
+     *
+     * @param analyzer analyzer for the register
+     * @param register Name of the field
+     * @param term     Raw term from the user
+     * @return the single token produced or null if there's not exactly one
+     */
+    static String analyze(Analyzer analyzer, String register, String term) {
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream tokenStream = analyzer.tokenStream(register, term)) {
+            CharTermAttribute charTerm = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                tokens.add(charTerm.toString());
+            }
+            tokenStream.end();
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Error analyzing: {} in: {}: {}", term, register, ex.getMessage());
+            return null;
+        }
+        return tokens.size() == 1 ? tokens.get(0) : null;
+    }
+
+    /**
+     * Build an analyzer from a fieldType definition from the schema api
+     *
+     * @param fieldType the definition
+     * @return index time analyzer
+     * @throws IOException If a factory cannot be instantiated
+     */
+    static Analyzer build(NamedList<Object> fieldType) throws IOException {
+        Object definition = fieldType.get("indexAnalyzer");
+        if (definition == null)
+            definition = fieldType.get("analyzer");
+        if (definition == null) {
+            if ("solr.StrField".equals(fieldType.get("class")))
+                return new KeywordAnalyzer();
+            throw new IllegalArgumentException("No analyzer for fieldType: " + fieldType.get("name"));
+        }
+        NamedList<Object> analyzer = (NamedList<Object>) definition;
+        if (analyzer.get("class") != null)
+            throw new IllegalArgumentException("Prebuilt analyzer: " + analyzer.get("class") + " is not supported");
+        CustomAnalyzer.Builder builder = CustomAnalyzer.builder();
+        for (NamedList<Object> charFilter : list(analyzer.get("charFilters"))) {
+            builder.addCharFilter(spiName(charFilter, "CharFilterFactory"), args(charFilter));
+        }
+        NamedList<Object> tokenizer = (NamedList<Object>) analyzer.get("tokenizer");
+        if (tokenizer == null)
+            throw new IllegalArgumentException("No tokenizer for fieldType: " + fieldType.get("name"));
+        builder.withTokenizer(spiName(tokenizer, "TokenizerFactory"), args(tokenizer));
+        for (NamedList<Object> filter : list(analyzer.get("filters"))) {
+            builder.addTokenFilter(spiName(filter, "FilterFactory"), args(filter));
+        }
+        return builder.build();
+    }
+
+    private static List<NamedList<Object>> list(Object o) {
+        if (o == null)
+            return List.of();
+        return (List<NamedList<Object>>) o;
+    }
+
+    /**
+     * Convert a SolR class name (solr.LowerCaseFilterFactory) into a Lucene
+     * SPI name (lowercase)
+     *
+     * @param factory definition of the factory
+     * @param suffix  type specific class name suffix
+     * @return name the factory is registered by
+     */
+    private static String spiName(NamedList<Object> factory, String suffix) {
+        Object name = factory.get("name");
+        if (name != null)
+            return String.valueOf(name);
+        String className = String.valueOf(factory.get("class"));
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        if (!simpleName.endsWith(suffix))
+            throw new IllegalArgumentException("Unknown factory: " + className);
+        return simpleName.substring(0, simpleName.length() - suffix.length());
+    }
+
+    private static Map<String, String> args(NamedList<Object> factory) {
+        HashMap<String, String> args = new HashMap<>();
+        for (int i = 0 ; i < factory.size() ; i++) {
+            String name = factory.getName(i);
+            if (!name.equals("class") && !name.equals("name"))
+                args.put(name, String.valueOf(factory.getVal(i)));
+        }
+        return args;
+    }
+
+    @Gauge(name = "local", unit = MetricUnits.NONE,
+           description = "Number of terms normalized in process")
+    public long getLocal() {
+        return local.get();
+    }
+
+    @Gauge(name = "remote", unit = MetricUnits.NONE,
+           description = "Number of terms normalized by SolR")
+    public long getRemote() {
+        return remote.get();
+    }
+
+    @Gauge(name = "mismatches", unit = MetricUnits.NONE,
+           description = "Number of times local and remote normalization differed")
+    public long getMismatches() {
+        return mismatches.get();
+    }
+}
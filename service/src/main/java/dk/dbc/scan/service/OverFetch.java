@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+
+/**
+ * Learn how many terms to fetch and check speculatively
+ * <p>
+ * For every scan register (register_agency_profile) a rolling ratio of
+ * terms that had no hits is kept, over the last OVERFETCH_WINDOW checked
+ * terms. From that the number of terms to fetch from /terms, and the number
+ * of terms to check more than asked for, is derived. Until
+ * OVERFETCH_MIN_SAMPLES terms has been checked, the fixed defaults are used.
+ * Only OVERFETCH_MAX_REGISTERS scan registers are tracked, others use the
+ * fixed defaults.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class OverFetch {
+
+    static final int DEFAULT_OVERHEAD = 3;
+
+    @Inject
+    Config config;
+
+    private final ConcurrentHashMap<String, Ratio> ratios = new ConcurrentHashMap<>();
+    private final Ratio overall = new Ratio();
+
+    public OverFetch() {
+    }
+
+    private OverFetch(Config config) {
+        this.config = config;
+    }
+
+    static OverFetch instance(Config config) {
+        return new OverFetch(config);
+    }
+
+    /**
+     * Record the outcome of a hitcount check
+     *
+     * @param scanRegister register_agency_profile
+     * @param checked      number of terms checked
+     * @param zeroHits     number of terms that had no hits
+     */
+    public void record(String scanRegister, int checked, int zeroHits) {
+        if (checked == 0)
+            return;
+        int window = config.getOverFetchWindow();
+        overall.add(checked, zeroHits, window);
+        Ratio ratio = ratios.get(scanRegister);
+        if (ratio == null) {
+            if (ratios.size() >= config.getOverFetchMaxRegisters())
+                return;
+            ratio = ratios.computeIfAbsent(scanRegister, r -> new Ratio());
+        }
+        ratio.add(checked, zeroHits, window);
+    }
+
+    /**
+     * Get the current estimate for a scan register
+     *
+     * @param scanRegister register_agency_profile
+     * @return estimate to size requests by
+     */
+    public Estimate estimate(String scanRegister) {
+        Ratio ratio = ratios.get(scanRegister);
+        if (ratio == null)
+            return new Estimate(-1.0);
+        synchronized (ratio) {
+            if (ratio.total < config.getOverFetchMinSamples())
+                return new Estimate(-1.0);
+            return new Estimate(ratio.zero / ratio.total);
+        }
+    }
+
+    /**
+     * The learned values for all tracked scan registers
+     *
+     * @return map of scan register to learned values
+     */
+    public Map<String, Learned> learned() {
+        TreeMap<String, Learned> learned = new TreeMap<>();
+        ratios.forEach((scanRegister, ratio) -> {
+            Estimate estimate = estimate(scanRegister);
+            synchronized (ratio) {
+                learned.put(scanRegister, new Learned(ratio.total, ratio.total == 0 ? 0.0 : ratio.zero / ratio.total,
+                                                      estimate.fetch(100) / 100.0, estimate.overhead(10)));
+            }
+        });
+        return learned;
+    }
+
+    @Gauge(name = "registers", unit = MetricUnits.NONE,
+           description = "Number of scan registers with a learned zero-hit ratio")
+    public int getRegisters() {
+        return ratios.size();
+    }
+
+    @Gauge(name = "zeroHitRatio", unit = MetricUnits.NONE,
+           description = "Ratio (0..1) of checked terms without hits, across all registers")
+    public double getZeroHitRatio() {
+        synchronized (overall) {
+            return overall.total == 0 ? 0.0 : overall.zero / overall.total;
+        }
+    }
+
+    /**
+     * Request sizes derived from a zero-hit ratio
+     */
+    public final class Estimate {
+
+        private final double zeroHitRatio;
+
+        private Estimate(double zeroHitRatio) {
+            this.zeroHitRatio = zeroHitRatio;
+        }
+
+        /**
+         * Number of terms to check more than requested, so that a batch of
+         * zero-hit terms doesn't cost an extra round trip
+         *
+         * @param count number of terms requested
+         * @return number of extra terms
+         */
+        public int overhead(int count) {
+            if (zeroHitRatio < 0.0)
+                return DEFAULT_OVERHEAD;
+            double hitRatio = Math.max(1.0 - zeroHitRatio, 1.0 / config.getOverFetchMaxFactor());
+            int overhead = (int) Math.ceil(count * zeroHitRatio / hitRatio) + 1;
+            return Math.min(Math.max(overhead, config.getOverFetchOverheadMin()), config.getOverFetchOverheadMax());
+        }
+
+        /**
+         * Number of terms to fetch from /terms, to get enough terms that has
+         * hits
+         *
+         * @param toGo number of terms needed with hits
+         * @return number of terms to fetch
+         */
+        public int fetch(int toGo) {
+            if (zeroHitRatio < 0.0)
+                return toGo + 5 + toGo / 8;
+            double hitRatio = Math.max(1.0 - zeroHitRatio, 1.0 / config.getOverFetchMaxFactor());
+            return (int) Math.ceil(toGo / hitRatio) + config.getOverFetchMinExtra();
+        }
+    }
+
+    @SuppressFBWarnings()
+    public static class Learned {
+
+        public double samples;
+
+        public double zeroHitRatio;
+
+        public double fetchFactor;
+
+        public int overheadPer10;
+
+        public Learned() {
+        }
+
+        public Learned(double samples, double zeroHitRatio, double fetchFactor, int overheadPer10) {
+            this.samples = samples;
+            this.zeroHitRatio = zeroHitRatio;
+            this.fetchFactor = fetchFactor;
+            this.overheadPer10 = overheadPer10;
+        }
+    }
+
+    /**
+     * Number of zero-hit terms out of checked terms, where older samples are
+     * scaled down, so that the total doesn't exceed the window
+     */
+    private static final class Ratio {
+
+        private double zero;
+        private double total;
+
+        private synchronized void add(int checked, int zeroHits, int window) {
+            double keep = Math.max(0.0, window - checked);
+            if (total > keep) {
+                zero = keep == 0.0 ? 0.0 : zero * keep / total;
+                total = keep;
+            }
+            zero += zeroHits;
+            total += checked;
+        }
+    }
+}
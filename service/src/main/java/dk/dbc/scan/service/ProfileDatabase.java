@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.postgresql.ds.PGSimpleDataSource;
+
+/**
+ * The profiles table maintained by the profile-change tools
+ * <p>
+ * Read with plain JDBC, so the service doesn't need the profile-change
+ * common module (and its database migration dependencies).
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+final class ProfileDatabase {
+
+    /**
+     * Channel that is notified, with the profile name as payload, when a
+     * profile is changed (ProfileDB.CHANNEL in profile-change)
+     */
+    static final String CHANNEL = "profile_change";
+
+    private static final Pattern POSTGRES_URL_REGEX = Pattern.compile("(?:postgres(?:ql)?://)?(?:([^:@]+):([^@]*)@)?([^:/]+)(?::([1-9]\\d*))?/(.+)");
+
+    private final PGSimpleDataSource dataSource;
+
+    /**
+     * Construct from an url
+     *
+     * @param url user:pass@host:port/base
+     */
+    ProfileDatabase(String url) {
+        Matcher matcher = POSTGRES_URL_REGEX.matcher(url);
+        if (!matcher.matches())
+            throw new IllegalArgumentException("This is not a valid database url: " + url);
+        dataSource = new PGSimpleDataSource();
+        if (matcher.group(1) != null)
+            dataSource.setUser(matcher.group(1));
+        if (matcher.group(2) != null)
+            dataSource.setPassword(matcher.group(2));
+        dataSource.setServerNames(new String[] {matcher.group(3)});
+        if (matcher.group(4) != null)
+            dataSource.setPortNumbers(new int[] {Integer.parseUnsignedInt(matcher.group(4))});
+        dataSource.setDatabaseName(matcher.group(5));
+    }
+
+    Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    /**
+     * The names of all the profiles
+     *
+     * @return profiles as agencyId-profile
+     * @throws SQLException If the database acts up
+     */
+    Set<String> readProfiles() throws SQLException {
+        Set<String> profiles = new LinkedHashSet<>();
+        try (Connection connection = getConnection() ;
+             Statement stmt = connection.createStatement() ;
+             ResultSet resultSet = stmt.executeQuery("SELECT DISTINCT agencyId, classifier FROM profiles")) {
+            while (resultSet.next()) {
+                profiles.add(resultSet.getInt(1) + "-" + resultSet.getString(2));
+            }
+        }
+        return profiles;
+    }
+}
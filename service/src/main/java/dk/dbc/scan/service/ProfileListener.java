@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refresh profiles in the cache when they are changed
+ * <p>
+ * The profile-change tools notify every profile they change on the
+ * profiles database (PROFILE_DB). Changes made while not listening are
+ * missed, so when listening is resumed after an error, everything in the
+ * profile cache is made stale.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class ProfileListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileListener.class);
+
+    private static final int POLL_MS = 1_000;
+    private static final long RETRY_MS = 5_000L;
+
+    @Inject
+    Config config;
+
+    @Inject
+    ProfileServiceCache psCache;
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    private volatile boolean running;
+    private volatile boolean listening;
+    private Thread thread;
+    private final AtomicLong notified = new AtomicLong();
+
+    public ProfileListener() {
+    }
+
+    private ProfileListener(Config config, ProfileServiceCache psCache) {
+        this.config = config;
+        this.psCache = psCache;
+    }
+
+    static ProfileListener instance(Config config, ProfileServiceCache psCache) {
+        return new ProfileListener(config, psCache);
+    }
+
+    public void startup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        // Force construction at deploy time
+    }
+
+    @PostConstruct
+    public void init() {
+        if (config.getProfileDb().isEmpty() || !psCache.isEnabled()) {
+            log.info("Listening for profile changes is disabled");
+            return;
+        }
+        ThreadFactory factory = threadFactory == null ? Executors.defaultThreadFactory() : threadFactory;
+        running = true;
+        thread = factory.newThread(this::listen);
+        thread.setName("profile-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        if (thread != null)
+            thread.interrupt();
+    }
+
+    private void listen() {
+        ProfileDatabase profileDb = new ProfileDatabase(config.getProfileDb());
+        boolean missed = false;
+        while (running) {
+            try (Connection connection = profileDb.getConnection() ;
+                 Statement stmt = connection.createStatement()) {
+                stmt.execute("LISTEN " + ProfileDatabase.CHANNEL);
+                listening = true;
+                log.info("Listening for profile changes");
+                if (missed)
+                    psCache.staleAll();
+                missed = false;
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_MS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            changed(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException ex) {
+                if (!running)
+                    return;
+                log.error("Error listening for profile changes: {}", ex.getMessage());
+                log.debug("Error listening for profile changes: ", ex);
+            } finally {
+                listening = false;
+            }
+            missed = true;
+            try {
+                Thread.sleep(RETRY_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handle a notification
+     *
+     * @param profile the changed profile as agencyId-profile
+     */
+    void changed(String profile) {
+        notified.incrementAndGet();
+        String[] parts = profile.split("-", 2);
+        try {
+            if (parts.length != 2)
+                throw new NumberFormatException();
+            String agencyId = String.format("%06d", Integer.parseInt(parts[0]));
+            log.info("Profile: {} for agency: {} has changed", parts[1], agencyId);
+            psCache.changed(agencyId, parts[1]);
+        } catch (NumberFormatException ex) {
+            log.warn("Got change for an invalid profile: {}", profile);
+        }
+    }
+
+    @Gauge(name = "profileChangesNotified", unit = MetricUnits.NONE,
+           description = "Number of profile changes received from the profile database")
+    public long getNotified() {
+        return notified.get();
+    }
+
+    @Gauge(name = "profileChangesListening", unit = MetricUnits.NONE,
+           description = "1 if profile changes are received from the profile database, 0 otherwise")
+    public int getListening() {
+        return listening ? 1 : 0;
+    }
+}
@@ -24,26 +24,46 @@ import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import dk.dbc.vipcore.marshallers.ProfileServiceResponse;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
 import org.eclipse.microprofile.metrics.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.cache.annotation.CacheKey;
-import javax.cache.annotation.CacheResult;
-import jakarta.ejb.Stateless;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.ClientErrorException;
 import jakarta.ws.rs.ServerErrorException;
 import jakarta.ws.rs.core.MediaType;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Cache of profile filter queries from VipCore
+ * <p>
+ * An entry is fresh for PROFILE_REFRESH_AHEAD percent of CACHE_TIMEOUT
+ * seconds. After that it is still served, but refreshed in the background
+ * (one refresh per profile at a time). An entry that hasn't been refreshed
+ * is dropped PROFILE_STALE_GRACE seconds after CACHE_TIMEOUT, unless the
+ * refresh failed because VipCore is unavailable, then the last good filter
+ * query is kept. Errors for a profile, reported by VipCore, are cached for
+ * CACHE_TIMEOUT_ERROR seconds.
  *
  * @author Morten Bøgeskov (mb@dbc.dk)
  */
-@Stateless
+@ApplicationScoped
 public class ProfileServiceCache {
 
     private static final Logger log = LoggerFactory.getLogger(ProfileServiceCache.class);
@@ -53,18 +73,62 @@ public class ProfileServiceCache {
             .configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS, true)
             .build();
 
+    static final String CACHE_NAME = "profileFilter";
+    static final String ERROR_CACHE_NAME = "profileFilterError";
+
     @Inject
     Config config;
 
+    @Inject
+    Coalescer coalescer;
+
+    @Inject
+    CircuitBreakers breakers;
+
+    @Inject
+    CacheManager cacheManager;
+
+    @Inject
+    ScanExecutor executor;
+
+    private Cache<String, String> cache;
+    private Cache<String, String> errors;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong kept = new AtomicLong();
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
     public ProfileServiceCache() {
     }
 
-    private ProfileServiceCache(Config config) {
+    private ProfileServiceCache(Config config, Coalescer coalescer, CircuitBreakers breakers, CacheManager cacheManager, ScanExecutor executor) {
         this.config = config;
+        this.coalescer = coalescer;
+        this.breakers = breakers;
+        this.cacheManager = cacheManager;
+        this.executor = executor;
+        init();
+    }
+
+    static ProfileServiceCache instance(Config config, Coalescer coalescer, CircuitBreakers breakers, CacheManager cacheManager, ScanExecutor executor) {
+        return new ProfileServiceCache(config, coalescer, breakers, cacheManager, executor);
     }
 
-    static ProfileServiceCache instance(Config config) {
-        return new ProfileServiceCache(config);
+    @PostConstruct
+    public void init() {
+        if (cacheManager == null || config.getProfileCacheSize() == 0) {
+            log.info("Profile cache is disabled");
+            return;
+        }
+        // Expiry counts from the last write, so a refreshed entry gets a new lifetime
+        cache = Caches.bounded(cacheManager, CACHE_NAME, String.class, String.class, config.getProfileCacheSize(),
+                               ModifiedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, config.getCacheTimeout() + config.getProfileStaleGrace())));
+        if (config.getCacheTimeoutError() > 0)
+            errors = Caches.bounded(cacheManager, ERROR_CACHE_NAME, String.class, String.class,
+                                    config.getProfileCacheSize(), config.getCacheTimeoutError());
     }
 
     /**
@@ -77,29 +141,311 @@ public class ProfileServiceCache {
      * @throws IOException If communication with the service fails
      */
     @Timed
-    @CacheResult(cacheName = "profileService",
-                 exceptionCacheName = "profileServiceError",
-                 cachedExceptions = {ClientErrorException.class,
-                                     ServerErrorException.class,
-                                     IOException.class})
-    public String filterQueryFor(@CacheKey String agencyId, @CacheKey String profile, String trackingId) throws IOException {
+    public String filterQueryFor(String agencyId, String profile, String trackingId) throws IOException {
+        String key = agencyId + "|" + profile;
+        if (cache == null)
+            return await(coalescer.blocking("profile|" + key, () -> lookup(agencyId, profile, trackingId)));
+        String error = read(errors, key);
+        if (error != null)
+            throw new ProfileException(error);
+        Entry entry = Entry.decode(read(cache, key));
+        if (entry != null) {
+            hits.incrementAndGet();
+            long age = System.currentTimeMillis() - entry.fetched;
+            if (age >= TimeUnit.SECONDS.toMillis(config.getCacheTimeout()))
+                stale.incrementAndGet();
+            if (age >= TimeUnit.SECONDS.toMillis(config.getCacheTimeout()) * config.getProfileRefreshAhead() / 100)
+                refresh("profile|" + key, key, agencyId, profile, entry, "profile-refresh");
+            return entry.filterQuery;
+        }
+        misses.incrementAndGet();
+        // Concurrent cache misses for the same profile share one request
+        return await(coalescer.blocking("profile|" + key, () -> load(key, agencyId, profile, trackingId, null)));
+    }
+
+    /**
+     * If filter queries are cached
+     *
+     * @return false if every lookup goes to VipCore
+     */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * A profile has been changed, drop what is cached for it, and fetch it
+     * again in the background
+     *
+     * @param agencyId Agency with a profile
+     * @param profile  Name of profile
+     */
+    public void changed(String agencyId, String profile) {
+        if (cache == null)
+            return;
+        String key = agencyId + "|" + profile;
+        changes.incrementAndGet();
+        remove(errors, key);
+        remove(cache, key);
+        // Not joining a refresh in flight, it might have fetched the old profile
+        refresh("profile-changed|" + key, key, agencyId, profile, null, "profile-changed");
+    }
+
+    /**
+     * Changes may have been missed, make every cached filter query stale, so
+     * that it is refreshed when it is used
+     */
+    public void staleAll() {
+        if (cache == null)
+            return;
+        try {
+            for (Cache.Entry<String, String> cached : cache) {
+                Entry entry = Entry.decode(cached.getValue());
+                if (entry != null)
+                    cache.replace(cached.getKey(), cached.getValue(), new Entry(0L, entry.filterQuery).encode());
+            }
+            if (errors != null)
+                errors.removeAll();
+        } catch (RuntimeException ex) {
+            log.warn("Error marking profile cache as stale: {}", ex.getMessage());
+            log.debug("Error marking profile cache as stale: ", ex);
+        }
+    }
+
+    /**
+     * Refresh an entry in the background, unless it is already being
+     * refreshed
+     * <p>
+     * No scan is waiting for it, so the request to VipCore gets a fixed
+     * tracking id telling why it was made
+     */
+    private void refresh(String coalesceKey, String key, String agencyId, String profile, Entry entry, String trackingId) {
+        coalescer.async(coalesceKey, () -> {
+            refreshes.incrementAndGet();
+            log.debug("Refreshing filter query for agency {} and profile {}", agencyId, profile);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return load(key, agencyId, profile, trackingId, entry);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, executor.blocking());
+        });
+    }
+
+    /**
+     * Fetch a filter query, and update the cache
+     *
+     * @param previous the entry being refreshed, null if there's none
+     */
+    private String load(String key, String agencyId, String profile, String trackingId, Entry previous) throws IOException {
+        try {
+            String filterQuery = lookup(agencyId, profile, trackingId);
+            write(cache, key, new Entry(System.currentTimeMillis(), filterQuery).encode());
+            return filterQuery;
+        } catch (ProfileException | ClientErrorException ex) {
+            write(errors, key, ex.getMessage());
+            remove(cache, key);
+            throw ex;
+        } catch (IOException | RuntimeException ex) {
+            if (previous != null) {
+                // VipCore is unavailable, keep serving what we have
+                kept.incrementAndGet();
+                log.warn("Could not refresh filter query for agency {} and profile {}, keeping the old: {}", agencyId, profile, ex.getMessage());
+                log.debug("Could not refresh filter query for agency {} and profile {}, keeping the old: ", agencyId, profile, ex);
+                // Writing it again gives it a new lifetime, it stays stale so
+                // the refresh is retried
+                write(cache, key, previous.encode());
+            }
+            throw ex;
+        }
+    }
+
+    String lookup(String agencyId, String profile, String trackingId) throws IOException {
+        ScanEvents.ProfileEvent event = new ScanEvents.ProfileEvent();
+        event.begin();
+        try {
+            String filterQuery = fetchFilterQuery(agencyId, profile, trackingId);
+            event.end(agencyId, profile, null);
+            return filterQuery;
+        } catch (IOException | RuntimeException ex) {
+            event.end(agencyId, profile, ex);
+            throw ex;
+        }
+    }
+
+    private static String await(CompletableFuture<String> filterQuery) throws IOException {
+        try {
+            return filterQuery.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof UncheckedIOException)
+                throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private static String read(Cache<String, String> cache, String key) {
+        if (cache == null)
+            return null;
+        try {
+            return cache.get(key);
+        } catch (RuntimeException ex) {
+            log.warn("Error reading from profile cache: {}", ex.getMessage());
+            log.debug("Error reading from profile cache: ", ex);
+            return null;
+        }
+    }
+
+    private static void write(Cache<String, String> cache, String key, String value) {
+        if (cache == null)
+            return;
+        try {
+            cache.put(key, value);
+        } catch (RuntimeException ex) {
+            log.warn("Error writing to profile cache: {}", ex.getMessage());
+            log.debug("Error writing to profile cache: ", ex);
+        }
+    }
+
+    private static void remove(Cache<String, String> cache, String key) {
+        if (cache == null)
+            return;
+        try {
+            cache.remove(key);
+        } catch (RuntimeException ex) {
+            log.warn("Error removing from profile cache: {}", ex.getMessage());
+            log.debug("Error removing from profile cache: ", ex);
+        }
+    }
+
+    @Gauge(name = "profileCacheHits", unit = MetricUnits.NONE,
+           description = "Number of filter queries served from the cache")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Gauge(name = "profileCacheMisses", unit = MetricUnits.NONE,
+           description = "Number of filter queries fetched while the request waited")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Gauge(name = "profileCacheRefreshes", unit = MetricUnits.NONE,
+           description = "Number of filter queries refreshed in the background")
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    @Gauge(name = "profileCacheStale", unit = MetricUnits.NONE,
+           description = "Number of filter queries served after CACHE_TIMEOUT")
+    public long getStale() {
+        return stale.get();
+    }
+
+    @Gauge(name = "profileCacheKept", unit = MetricUnits.NONE,
+           description = "Number of failed refreshes where the old filter query was kept")
+    public long getKept() {
+        return kept.get();
+    }
+
+    @Gauge(name = "profileCacheChanges", unit = MetricUnits.NONE,
+           description = "Number of filter queries dropped because the profile was changed")
+    public long getChanges() {
+        return changes.get();
+    }
+
+    @Gauge(name = "profileFilterFallbacks", unit = MetricUnits.NONE,
+           description = "Number of filter queries that could not be made into a terms filter")
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * Thrown when VipCore reports an error for a profile
+     */
+    public static class ProfileException extends ServerErrorException {
+
+        public ProfileException(String message) {
+            super(message, jakarta.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * A cached filter query, and when it was fetched
+     * <p>
+     * Stored as "{fetched}:{filterQuery}", or "{fetched}" if the profile has no
+     * filter query
+     */
+    static final class Entry {
+
+        final long fetched;
+        final String filterQuery;
+
+        Entry(long fetched, String filterQuery) {
+            this.fetched = fetched;
+            this.filterQuery = filterQuery;
+        }
+
+        String encode() {
+            return filterQuery == null ? String.valueOf(fetched) : fetched + ":" + filterQuery;
+        }
+
+        static Entry decode(String value) {
+            if (value == null)
+                return null;
+            int colon = value.indexOf(':');
+            try {
+                if (colon == -1)
+                    return new Entry(Long.parseLong(value), null);
+                return new Entry(Long.parseLong(value.substring(0, colon)), value.substring(colon + 1));
+            } catch (NumberFormatException ex) {
+                log.warn("Malformed profile cache entry: {}", value);
+                return null;
+            }
+        }
+    }
+
+    private String fetchFilterQuery(String agencyId, String profile, String trackingId) throws IOException {
         log.debug("filterQueryFor called with agency {} and profile {}", agencyId, profile);
         URI uri = config.getVipCore().path("profileservice/search/{agencyId}/{profile}").build(agencyId, profile);
+        CircuitBreakers.Call call = breakers.call(CircuitBreakers.PROFILE);
+        ProfileServiceResponse resp;
         try (InputStream is = config.getVipCoreHttpClient(trackingId)
                              .target(uri)
                              .request(MediaType.APPLICATION_JSON)
                              .get(InputStream.class))
         {
-            ProfileServiceResponse resp = O.readValue(is, ProfileServiceResponse.class);
-            if (resp.getError() != null) {
-                log.warn("Got an error: {} for agency {} and profile {}", resp.getError().value(), agencyId, profile);
-                throw new ServerErrorException(resp.getError().value(), jakarta.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR);
-            }
-            final String res = resp.getFilterQuery();
-            return res;
+            resp = O.readValue(is, ProfileServiceResponse.class);
         } catch (JsonParseException e) {
+            call.failure();
             log.warn("Error occurred when fetching filter query for agency {}, profile {}: {}", agencyId, profile, e.getMessage());
             throw new ServerErrorException(e.getMessage(), jakarta.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR);
+        } catch (IOException | RuntimeException e) {
+            call.failed(e);
+            throw e;
+        }
+        // An error for this profile is still an answer from VipCore
+        call.success();
+        if (resp.getError() != null) {
+            log.warn("Got an error: {} for agency {} and profile {}", resp.getError().value(), agencyId, profile);
+            throw new ProfileException(resp.getError().value());
+        }
+        // Profiles with the same collections share caches, also in SolR
+        String filterQuery = FilterQueries.canonical(resp.getFilterQuery());
+        if (config.getProfileFilterMode() == FilterQueries.Mode.TERMS) {
+            String terms = FilterQueries.terms(filterQuery, resp.getCollectionIdentifiers());
+            if (terms != null)
+                return terms;
+            fallbacks.incrementAndGet();
+            log.debug("Filter query for agency {} and profile {} cannot be made into a terms filter: {}", agencyId, profile, filterQuery);
         }
+        return filterQuery;
     }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fill the profile cache at startup
+ * <p>
+ * The profiles are taken from PROFILE_WARMUP_LIST and the profiles table in
+ * PROFILE_DB (the database maintained by the profile-change tools).
+ * They are looked up PROFILE_WARMUP_PARALLEL at a time, and the service
+ * isn't reported ready until all are looked up, or PROFILE_WARMUP_TIMEOUT
+ * seconds have passed.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+@Readiness
+public class ProfileWarmup implements HealthCheck {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileWarmup.class);
+
+    @Inject
+    Config config;
+
+    @Inject
+    ProfileServiceCache psCache;
+
+    @Inject
+    ScanExecutor executor;
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile boolean done;
+    private long deadline;
+
+    public ProfileWarmup() {
+    }
+
+    private ProfileWarmup(Config config, ProfileServiceCache psCache, ScanExecutor executor) {
+        this.config = config;
+        this.psCache = psCache;
+        this.executor = executor;
+        init();
+    }
+
+    static ProfileWarmup instance(Config config, ProfileServiceCache psCache, ScanExecutor executor) {
+        return new ProfileWarmup(config, psCache, executor);
+    }
+
+    public void startup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        // Force construction at deploy time
+    }
+
+    @PostConstruct
+    public void init() {
+        deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(config.getProfileWarmupTimeout());
+        if (config.getProfileWarmupTimeout() == 0 || !psCache.isEnabled() ||
+            config.getProfileDb().isEmpty() && config.getProfileWarmupList().isEmpty()) {
+            log.info("Profile warmup is disabled");
+            done = true;
+            return;
+        }
+        executor.blocking().execute(this::warmup);
+    }
+
+    private void warmup() {
+        Set<String> profiles = profiles();
+        total.set(profiles.size());
+        log.info("Warming profile cache with {} profiles", profiles.size());
+        ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>(profiles);
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(config.getProfileWarmupParallel(), profiles.size())];
+        for (int i = 0 ; i < workers.length ; i++) {
+            workers[i] = CompletableFuture.runAsync(() -> drain(queue), executor.blocking());
+        }
+        CompletableFuture.allOf(workers).whenComplete((v, ex) -> {
+            if (queue.isEmpty()) {
+                log.info("Profile cache warmed: {} profiles loaded, {} failed", loaded.get(), failed.get());
+            } else {
+                log.warn("Profile cache warmup timed out: {} profiles loaded, {} failed, {} not loaded", loaded.get(), failed.get(), queue.size());
+            }
+            done = true;
+        });
+    }
+
+    /**
+     * The profiles to warm in the format agencyId-profile
+     *
+     * @return names of profiles
+     */
+    private Set<String> profiles() {
+        Set<String> profiles = new LinkedHashSet<>(config.getProfileWarmupList());
+        if (!config.getProfileDb().isEmpty()) {
+            try {
+                profiles.addAll(new ProfileDatabase(config.getProfileDb()).readProfiles());
+            } catch (SQLException | RuntimeException ex) {
+                log.warn("Could not read profiles from database: {}", ex.getMessage());
+                log.debug("Could not read profiles from database: ", ex);
+            }
+        }
+        return profiles;
+    }
+
+    private void drain(ConcurrentLinkedQueue<String> queue) {
+        for (String profile = queue.poll() ; profile != null ; profile = queue.poll()) {
+            if (System.currentTimeMillis() >= deadline) {
+                queue.add(profile);
+                return;
+            }
+            try {
+                String[] parts = profile.split("-", 2);
+                String agencyId = String.format("%06d", Integer.parseInt(parts[0]));
+                psCache.filterQueryFor(agencyId, parts[1], "profile-warmup");
+                loaded.incrementAndGet();
+            } catch (IOException | RuntimeException ex) {
+                failed.incrementAndGet();
+                log.warn("Could not warm profile: {}: {}", profile, ex.getMessage());
+                log.debug("Could not warm profile: {}: ", profile, ex);
+            }
+        }
+    }
+
+    @Override
+    public HealthCheckResponse call() {
+        return HealthCheckResponse.named("profile-warmup")
+                .status(done || System.currentTimeMillis() >= deadline)
+                .withData("profiles", total.get())
+                .withData("loaded", loaded.get())
+                .withData("failed", failed.get())
+                .build();
+    }
+}
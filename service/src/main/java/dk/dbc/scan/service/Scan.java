@@ -19,8 +19,10 @@
 package dk.dbc.scan.service;
 
 import dk.dbc.log.LogWith;
-import java.io.IOException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.regex.Pattern;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Inject;
@@ -30,10 +32,9 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
-import org.apache.solr.client.solrj.SolrServerException;
-import org.eclipse.microprofile.metrics.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,32 +55,59 @@ public class Scan {
     @Inject
     ScanLogic scanLogic;
 
+    @Inject
+    ScanAdmission admission;
+
     public Scan() {
     }
 
-    private Scan(Config config, ScanLogic scanLogic) {
+    private Scan(Config config, ScanLogic scanLogic, ScanAdmission admission) {
         this.config = config;
         this.scanLogic = scanLogic;
+        this.admission = admission;
     }
 
-    static Scan instance(Config config, ScanLogic scanLogic) {
-        return new Scan(config, scanLogic);
+    static Scan instance(Config config, ScanLogic scanLogic, ScanAdmission admission) {
+        return new Scan(config, scanLogic, admission);
     }
 
+    /**
+     * Scan a register
+     * <p>
+     * The parameters are validated on the calling thread, the scan itself is
+     * computed asynchronously, so that the container thread isn't held while
+     * waiting for SolR. If too many scans are running, it may have to wait
+     * for its turn, or be rejected with 429 Too Many Requests. The time of a
+     * scan is measured when its page is ready (scanTime), since this returns
+     * as soon as the scan is started.
+     *
+     * @param agencyIdNum Agency that performs the request
+     * @param profile     The profile that is used by the agency
+     * @param term        The term to scan from
+     * @param register    The register to scan in
+     * @param count       Number of terms wanted
+     * @param cont        If term should be excluded
+     * @param cursor      Token from previous page (can be null)
+     * @param timeout     Number of milliseconds the scan may take (can be
+     *                    null)
+     * @param trackingId  Tracking
+     * @return future response
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    @Timed
-    public ScanResponse.Success scan(@QueryParam("agencyId") Integer agencyIdNum,
-                                     @QueryParam("profile") String profile,
-                                     @QueryParam("term") String term,
-                                     @QueryParam("register") String register,
-                                     @QueryParam("count") @DefaultValue("10") int count,
-                                     @QueryParam("continue") @DefaultValue("false") boolean cont,
-                                     @QueryParam("trackingId") String trackingId) {
+    public CompletionStage<ScanResponse.Success> scan(@QueryParam("agencyId") Integer agencyIdNum,
+                                                      @QueryParam("profile") String profile,
+                                                      @QueryParam("term") String term,
+                                                      @QueryParam("register") String register,
+                                                      @QueryParam("count") @DefaultValue("10") int count,
+                                                      @QueryParam("continue") @DefaultValue("false") boolean cont,
+                                                      @QueryParam("cursor") String cursor,
+                                                      @QueryParam("timeout") Integer timeout,
+                                                      @QueryParam("trackingId") String trackingId) {
         if (trackingId == null || trackingId.isEmpty())
             trackingId = UUID.randomUUID().toString();
         try (LogWith mdc = LogWith.track(trackingId)) {
-            ScanResponse.Request requestParam = new ScanResponse.Request(agencyIdNum, profile, term, register, count, cont, trackingId);
+            ScanResponse.Request requestParam = new ScanResponse.Request(agencyIdNum, profile, term, register, count, cont, cursor, timeout, trackingId);
             try {
                 if (agencyIdNum == null)
                     throw new IllegalArgumentException("Required parameter: agencyId is missing");
@@ -93,25 +121,31 @@ public class Scan {
                     throw new IllegalArgumentException("Required parameter: register is missing");
                 if (count <= 0)
                     throw new IllegalArgumentException("Parameter: count needs to be a positive number");
+                if (timeout != null && timeout <= 0)
+                    throw new IllegalArgumentException("Parameter: timeout needs to be a positive number");
                 count = Integer.min(count, config.getMaxCount());
+                Deadline deadline = Deadline.in(timeout == null ? config.getScanTimeout() : Integer.min(timeout, config.getScanTimeoutMax()));
 
                 log.info("req = {}, actual count = {}", requestParam, count);
                 requestParam.setCount(count);
 
                 String agencyId = String.format("%06d", agencyIdNum);
-                ScanResponse.Result result = scanLogic.scan(register, term, cont, count, agencyId, profile, trackingId);
-                return new ScanResponse.Success(requestParam, result);
-
+                CompletableFuture<ScanResponse.Success> response = new CompletableFuture<>();
+                int scanCount = count;
+                admission.admit(() -> scanLogic.scanAsync(register, term, cont, scanCount, agencyId, profile, cursor, deadline, requestParam.getTrackingId()))
+                        .whenComplete((result, ex) -> {
+                            if (ex == null) {
+                                response.complete(new ScanResponse.Success(requestParam, result));
+                            } else {
+                                response.completeExceptionally(failure(ex, requestParam));
+                            }
+                        });
+                return response;
             } catch (IllegalArgumentException ex) {
                 throw failure(ex.getMessage(), requestParam, Response.Status.BAD_REQUEST);
             } catch (WebApplicationException ex) {
                 throw ex;
-            } catch (InterruptedException ex) {
-                log.error("Error processing request: {}", ex.getMessage());
-                log.debug("Error processing request: ", ex);
-                Thread.currentThread().interrupt();
-                throw failure("Internal server error", requestParam, Response.Status.INTERNAL_SERVER_ERROR);
-            } catch (SolrServerException | IOException | RuntimeException ex) {
+            } catch (RuntimeException ex) {
                 log.error("Error processing request: {}", ex.getMessage());
                 log.debug("Error processing request: ", ex);
                 throw failure("Internal server error", requestParam, Response.Status.INTERNAL_SERVER_ERROR);
@@ -119,9 +153,43 @@ public class Scan {
         }
     }
 
+    /**
+     * Convert an error from the asynchronous scan into a response
+     *
+     * @param ex           the error
+     * @param requestParam the request
+     * @return exception to complete the response with
+     */
+    private WebApplicationException failure(Throwable ex, ScanResponse.Request requestParam) {
+        if (ex instanceof CompletionException && ex.getCause() != null)
+            ex = ex.getCause();
+        try (LogWith mdc = LogWith.track(requestParam.getTrackingId())) {
+            if (ex instanceof WebApplicationException)
+                return (WebApplicationException) ex;
+            if (ex instanceof IllegalArgumentException)
+                return failure(ex.getMessage(), requestParam, Response.Status.BAD_REQUEST);
+            if (ex instanceof ScanAdmission.RejectedException) {
+                log.debug("Rejected: {}", ex.getMessage());
+                return failure(ex.getMessage(), requestParam, Response.Status.TOO_MANY_REQUESTS, ((ScanAdmission.RejectedException) ex).getRetryAfter());
+            }
+            if (ex instanceof CircuitBreakers.OpenException) {
+                log.debug("Rejected: {}", ex.getMessage());
+                return failure(ex.getMessage(), requestParam, Response.Status.SERVICE_UNAVAILABLE, ((CircuitBreakers.OpenException) ex).getRetryAfter());
+            }
+            log.error("Error processing request: {}", ex.getMessage());
+            log.debug("Error processing request: ", ex);
+            return failure("Internal server error", requestParam, Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     public WebApplicationException failure(String message, ScanResponse.Request requestParam, Response.StatusType status) {
         ScanResponse.Failure failure = new ScanResponse.Failure(message, requestParam);
         return new WebApplicationException(Response.status(status).entity(failure).build());
     }
 
+    public WebApplicationException failure(String message, ScanResponse.Request requestParam, Response.StatusType status, long retryAfter) {
+        ScanResponse.Failure failure = new ScanResponse.Failure(message, requestParam);
+        return new WebApplicationException(Response.status(status).header(HttpHeaders.RETRY_AFTER, retryAfter).entity(failure).build());
+    }
+
 }
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limit the number of scans running at once
+ * <p>
+ * At most ADMISSION_LIMIT scans run, ADMISSION_QUEUE more may wait up to
+ * ADMISSION_QUEUE_TIMEOUT ms for their turn, the rest are rejected. Waiting
+ * doesn't hold a thread.
+ * <p>
+ * In AIMD mode the limit adapts to the SolR latency: for every
+ * {@link #SAMPLES} SolR requests, if the average latency is above
+ * ADMISSION_LATENCY_TARGET ms, the limit is cut by 10% (down to
+ * ADMISSION_MIN_LIMIT), otherwise, if scans have been queued, it is raised by
+ * one (up to ADMISSION_LIMIT).
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class ScanAdmission {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanAdmission.class);
+
+    static final int SAMPLES = 100;
+
+    public enum Mode {
+        FIXED, AIMD
+    }
+
+    @Inject
+    Config config;
+
+    private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private int running = 0;
+    private int limit = -1;
+    private boolean saturated = false;
+    private int samples = 0;
+    private long latencySum = 0;
+
+    public ScanAdmission() {
+    }
+
+    private ScanAdmission(Config config) {
+        this.config = config;
+    }
+
+    static ScanAdmission instance(Config config) {
+        return new ScanAdmission(config);
+    }
+
+    /**
+     * Run a scan, when there's room for it
+     *
+     * @param <T>  type of result
+     * @param scan the scan to start when admitted
+     * @return future result, or failed with {@link RejectedException} if there
+     *         wasn't room for the scan
+     */
+    public <T> CompletableFuture<T> admit(Supplier<CompletableFuture<T>> scan) {
+        if (config.getAdmissionLimit() == 0)
+            return scan.get();
+        Waiter waiter;
+        synchronized (this) {
+            if (running < limit() && waiting.isEmpty()) {
+                running++;
+                admitted.incrementAndGet();
+                return run(scan);
+            }
+            saturated = true;
+            if (waiting.size() >= config.getAdmissionQueue()) {
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new RejectedException(config.getAdmissionRetryAfter()));
+            }
+            waiter = new Waiter();
+            waiting.add(waiter);
+        }
+        CompletableFuture.delayedExecutor(config.getAdmissionQueueTimeout(), TimeUnit.MILLISECONDS)
+                .execute(() -> {
+                    boolean removed;
+                    synchronized (this) {
+                        removed = waiting.remove(waiter);
+                    }
+                    if (removed) {
+                        rejected.incrementAndGet();
+                        waiter.admitted.completeExceptionally(new RejectedException(config.getAdmissionRetryAfter()));
+                    }
+                });
+        return waiter.admitted.thenCompose(admitted -> run(scan));
+    }
+
+    /**
+     * Record the latency of a SolR request (for AIMD)
+     *
+     * @param millis latency
+     */
+    public void record(long millis) {
+        if (config.getAdmissionLimit() == 0 || config.getAdmissionMode() != Mode.AIMD)
+            return;
+        List<Waiter> admit;
+        synchronized (this) {
+            latencySum += millis;
+            if (++samples < SAMPLES)
+                return;
+            long average = latencySum / samples;
+            int before = limit();
+            if (average > config.getAdmissionLatencyTarget()) {
+                limit = Math.max(config.getAdmissionMinLimit(), Math.min(before - 1, before * 9 / 10));
+            } else if (saturated) {
+                limit = Math.min(config.getAdmissionLimit(), before + 1);
+            }
+            if (limit != before)
+                log.debug("Admission limit {} -> {} (average SolR latency {}ms)", before, limit, average);
+            samples = 0;
+            latencySum = 0;
+            saturated = false;
+            admit = next();
+        }
+        admit.forEach(Waiter::admit);
+    }
+
+    private <T> CompletableFuture<T> run(Supplier<CompletableFuture<T>> scan) {
+        CompletableFuture<T> future;
+        try {
+            future = scan.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((result, ex) -> release());
+        return future;
+    }
+
+    private void release() {
+        List<Waiter> admit;
+        synchronized (this) {
+            running--;
+            admit = next();
+        }
+        admit.forEach(Waiter::admit);
+    }
+
+    /**
+     * Take the waiters there's room for (called while synchronized)
+     *
+     * @return waiters to admit, outside the lock
+     */
+    private List<Waiter> next() {
+        ArrayList<Waiter> admit = new ArrayList<>();
+        while (running < limit() && !waiting.isEmpty()) {
+            running++;
+            admitted.incrementAndGet();
+            admit.add(waiting.poll());
+        }
+        return admit;
+    }
+
+    private int limit() {
+        if (limit < 0)
+            limit = config.getAdmissionLimit();
+        return limit;
+    }
+
+    @Gauge(name = "admissionLimit", unit = MetricUnits.NONE,
+           description = "Number of scans allowed to run at once")
+    public synchronized int getLimit() {
+        return config.getAdmissionLimit() == 0 ? 0 : limit();
+    }
+
+    @Gauge(name = "admissionRunning", unit = MetricUnits.NONE,
+           description = "Number of scans running")
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    @Gauge(name = "admissionQueued", unit = MetricUnits.NONE,
+           description = "Number of scans waiting to run")
+    public synchronized int getQueued() {
+        return waiting.size();
+    }
+
+    @Gauge(name = "admissionAdmitted", unit = MetricUnits.NONE,
+           description = "Number of scans admitted")
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    @Gauge(name = "admissionRejected", unit = MetricUnits.NONE,
+           description = "Number of scans rejected because of load")
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Gauge(name = "admissionWaitTime", unit = MetricUnits.MILLISECONDS,
+           description = "Total time scans have waited to be admitted")
+    public long getWaitTime() {
+        return waitTime.get();
+    }
+
+    /**
+     * Thrown when a scan is rejected because of load
+     * <p>
+     * Without stack trace, since it is expected to be thrown a lot
+     */
+    public static class RejectedException extends RuntimeException {
+
+        private final long retryAfter;
+
+        private RejectedException(long retryAfter) {
+            super("Too many requests", null, false, false);
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * When to try again
+         *
+         * @return number of seconds
+         */
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    private final class Waiter {
+
+        private final long queued = System.nanoTime();
+        private final CompletableFuture<Boolean> admitted = new CompletableFuture<>();
+
+        private void admit() {
+            waitTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queued));
+            admitted.complete(true);
+        }
+    }
+}
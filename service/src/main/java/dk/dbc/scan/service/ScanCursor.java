@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.List;
+
+/**
+ * Where a scan left off
+ * <p>
+ * The terms that were fetched, but not used in the result, in index order.
+ * A term with a count of -1 has not had its hitcount checked. The nextTerm
+ * is where to continue the terms request after them, null if the end of the
+ * index has been reached.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ScanCursor {
+
+    private String register;
+    private String agencyId;
+    private String profile;
+    private String continueAfter;
+    private List<ScanResponse.Term> terms;
+    private String nextTerm;
+
+    public ScanCursor() {
+    }
+
+    public ScanCursor(String register, String agencyId, String profile, String continueAfter, List<ScanResponse.Term> terms, String nextTerm) {
+        this.register = register;
+        this.agencyId = agencyId;
+        this.profile = profile;
+        this.continueAfter = continueAfter;
+        this.terms = terms;
+        this.nextTerm = nextTerm;
+    }
+
+    /**
+     * Check if this cursor is a continuation of the given request
+     *
+     * @param register The register to scan in
+     * @param agencyId Agency that performs the request
+     * @param profile  The profile that is used by the agency
+     * @param term     The term to continue after
+     * @return if the cursor can be used
+     */
+    public boolean matches(String register, String agencyId, String profile, String term) {
+        return this.register.equals(register) &&
+               this.agencyId.equals(agencyId) &&
+               this.profile.equals(profile) &&
+               this.continueAfter.equals(term);
+    }
+
+    public String getRegister() {
+        return register;
+    }
+
+    public void setRegister(String register) {
+        this.register = register;
+    }
+
+    public String getAgencyId() {
+        return agencyId;
+    }
+
+    public void setAgencyId(String agencyId) {
+        this.agencyId = agencyId;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public void setProfile(String profile) {
+        this.profile = profile;
+    }
+
+    public String getContinueAfter() {
+        return continueAfter;
+    }
+
+    public void setContinueAfter(String continueAfter) {
+        this.continueAfter = continueAfter;
+    }
+
+    public List<ScanResponse.Term> getTerms() {
+        return terms;
+    }
+
+    public void setTerms(List<ScanResponse.Term> terms) {
+        this.terms = terms;
+    }
+
+    public String getNextTerm() {
+        return nextTerm;
+    }
+
+    public void setNextTerm(String nextTerm) {
+        this.nextTerm = nextTerm;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanCursor{" + "register=" + register + ", agencyId=" + agencyId + ", profile=" + profile + ", continueAfter=" + continueAfter + ", terms=" + terms + ", nextTerm=" + nextTerm + '}';
+    }
+}
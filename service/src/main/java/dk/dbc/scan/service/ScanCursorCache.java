@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Short lived storage of scan cursors
+ * <p>
+ * The cursors are stored as json, under a random token, that is handed to the
+ * client as an opaque continuation value.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class ScanCursorCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanCursorCache.class);
+
+    static final String CACHE_NAME = "scanCursor";
+
+    private static final ObjectMapper O = JsonMapper
+            .builder()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .build();
+
+    @Inject
+    Config config;
+
+    @Inject
+    CacheManager cacheManager;
+
+    private Cache<String, String> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ScanCursorCache() {
+    }
+
+    private ScanCursorCache(Config config, CacheManager cacheManager) {
+        this.config = config;
+        this.cacheManager = cacheManager;
+        init();
+    }
+
+    static ScanCursorCache instance(Config config, CacheManager cacheManager) {
+        return new ScanCursorCache(config, cacheManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (cacheManager == null || config.getScanCursorCacheSize() == 0) {
+            log.info("Scan cursor cache is disabled");
+            return;
+        }
+        cache = Caches.bounded(cacheManager, CACHE_NAME, String.class, String.class,
+                               config.getScanCursorCacheSize(), config.getScanCursorTimeout());
+    }
+
+    /**
+     * Store a cursor
+     *
+     * @param cursor where the scan left off
+     * @return token to retrieve it by or null if it couldn't be stored
+     */
+    public String store(ScanCursor cursor) {
+        if (cache == null)
+            return null;
+        try {
+            String token = UUID.randomUUID().toString();
+            cache.put(token, O.writeValueAsString(cursor));
+            return token;
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Error storing scan cursor: {}", ex.getMessage());
+            log.debug("Error storing scan cursor: ", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Find a cursor, that continues a request
+     *
+     * @param token    the token from the previous response (can be null)
+     * @param register The register to scan in
+     * @param agencyId Agency that performs the request
+     * @param profile  The profile that is used by the agency
+     * @param term     The term to continue after
+     * @return cursor or null if none is usable
+     */
+    public ScanCursor lookup(String token, String register, String agencyId, String profile, String term) {
+        if (cache == null || token == null || token.isEmpty())
+            return null;
+        try {
+            String json = cache.get(token);
+            if (json != null) {
+                ScanCursor cursor = O.readValue(json, ScanCursor.class);
+                if (cursor.matches(register, agencyId, profile, term)) {
+                    hits.incrementAndGet();
+                    return cursor;
+                }
+                log.debug("Cursor: {} does not match request", token);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Error reading scan cursor: {}", ex.getMessage());
+            log.debug("Error reading scan cursor: ", ex);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Gauge(name = "hits", unit = MetricUnits.NONE,
+           description = "Number of scans continued from a cursor")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Gauge(name = "misses", unit = MetricUnits.NONE,
+           description = "Number of cursors that were expired or did not match the request")
+    public long getMisses() {
+        return misses.get();
+    }
+}
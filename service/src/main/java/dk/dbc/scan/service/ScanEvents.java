@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the phases of a scan
+ * <p>
+ * Every event is started with begin() and completed with end(...), which only
+ * fills in the fields if the event is enabled in the recording, so that they
+ * cost next to nothing otherwise.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public final class ScanEvents {
+
+    private static final String CATEGORY = "Scan Service";
+
+    static final String OK = "ok";
+    static final String PARTIAL = "partial";
+    static final String TIMEOUT = "timeout";
+    static final String REJECTED = "rejected";
+    static final String ERROR = "error";
+
+    private ScanEvents() {
+    }
+
+    /**
+     * The outcome of a call
+     *
+     * @param ex what the call failed with, null for success
+     * @return outcome name
+     */
+    static String outcome(Throwable ex) {
+        while (( ex instanceof CompletionException || ex instanceof ExecutionException ) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        if (ex == null)
+            return OK;
+        if (ex instanceof TimeoutException || ex instanceof SolrApi.TimeAllowedExceededException)
+            return TIMEOUT;
+        if (ex instanceof CircuitBreakers.OpenException || ex instanceof ScanAdmission.RejectedException)
+            return REJECTED;
+        return ERROR;
+    }
+
+    @Name("dk.dbc.scan.Scan")
+    @Label("Scan")
+    @Category(CATEGORY)
+    @Description("A scan request")
+    @StackTrace(false)
+    public static class ScanEvent extends Event {
+
+        @Label("Register")
+        String register;
+
+        @Label("Agency")
+        String agencyId;
+
+        @Label("Profile")
+        String profile;
+
+        @Label("Count")
+        @Description("Number of terms requested")
+        int count;
+
+        @Label("Terms")
+        @Description("Number of terms returned")
+        int terms;
+
+        @Label("Prefetched")
+        boolean prefetched;
+
+        @Label("Outcome")
+        String outcome;
+
+        void end(String register, String agencyId, String profile, int count, ScanResponse.Result result, boolean prefetched) {
+            if (shouldCommit()) {
+                this.register = register;
+                this.agencyId = agencyId;
+                this.profile = profile;
+                this.count = count;
+                this.terms = result == null ? 0 : result.getTerms().size();
+                this.prefetched = prefetched;
+                this.outcome = result == null ? ERROR : result.isPartial() ? PARTIAL : OK;
+                commit();
+            }
+        }
+    }
+
+    @Name("dk.dbc.scan.Normalize")
+    @Label("Normalize")
+    @Category(CATEGORY)
+    @Description("Normalizing the scan term")
+    @StackTrace(false)
+    public static class NormalizeEvent extends Event {
+
+        @Label("Register")
+        String register;
+
+        @Label("Agency")
+        String agencyId;
+
+        @Label("Outcome")
+        String outcome;
+
+        void end(String register, String agencyId, Throwable ex) {
+            if (shouldCommit()) {
+                this.register = register;
+                this.agencyId = agencyId;
+                this.outcome = outcome(ex);
+                commit();
+            }
+        }
+    }
+
+    @Name("dk.dbc.scan.Terms")
+    @Label("Terms Fetch")
+    @Category(CATEGORY)
+    @Description("A /terms request to SolR")
+    @StackTrace(false)
+    public static class TermsEvent extends Event {
+
+        @Label("Register")
+        String register;
+
+        @Label("Agency")
+        String agencyId;
+
+        @Label("Count")
+        @Description("Number of terms requested")
+        int count;
+
+        @Label("Terms")
+        @Description("Number of terms returned")
+        int terms;
+
+        @Label("Outcome")
+        String outcome;
+
+        void end(String register, String agencyId, int count, int terms, Throwable ex) {
+            if (shouldCommit()) {
+                this.register = register;
+                this.agencyId = agencyId;
+                this.count = count;
+                this.terms = terms;
+                this.outcome = outcome(ex);
+                commit();
+            }
+        }
+    }
+
+    @Name("dk.dbc.scan.Hitcount")
+    @Label("Hitcount")
+    @Category(CATEGORY)
+    @Description("Hitcount lookup for a batch of terms")
+    @StackTrace(false)
+    public static class HitcountEvent extends Event {
+
+        @Label("Register")
+        String register;
+
+        @Label("Agency")
+        String agencyId;
+
+        @Label("Terms")
+        @Description("Number of terms looked up")
+        int terms;
+
+        @Label("Outcome")
+        String outcome;
+
+        void end(String register, String agencyId, int terms, Throwable ex) {
+            if (shouldCommit()) {
+                this.register = register;
+                this.agencyId = agencyId;
+                this.terms = terms;
+                this.outcome = outcome(ex);
+                commit();
+            }
+        }
+    }
+
+    @Name("dk.dbc.scan.Profile")
+    @Label("Profile Lookup")
+    @Category(CATEGORY)
+    @Description("Lookup of a profile filter in VipCore (on a cache miss)")
+    @StackTrace(false)
+    public static class ProfileEvent extends Event {
+
+        @Label("Agency")
+        String agencyId;
+
+        @Label("Profile")
+        String profile;
+
+        @Label("Outcome")
+        String outcome;
+
+        void end(String agencyId, String profile, Throwable ex) {
+            if (shouldCommit()) {
+                this.agencyId = agencyId;
+                this.profile = profile;
+                this.outcome = outcome(ex);
+                commit();
+            }
+        }
+    }
+
+    @Name("dk.dbc.scan.Cache")
+    @Label("Cache Lookup")
+    @Category(CATEGORY)
+    @Description("Lookup in the normalize or hitcount cache")
+    @StackTrace(false)
+    public static class CacheEvent extends Event {
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Register")
+        String register;
+
+        @Label("Hits")
+        int hits;
+
+        @Label("Misses")
+        int misses;
+
+        void end(String cache, String register, int hits, int misses) {
+            if (shouldCommit()) {
+                this.cache = cache;
+                this.register = register;
+                this.hits = hits;
+                this.misses = misses;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ContextService;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Where scans, hitcount requests and prefetching are run
+ * <p>
+ * With EXECUTOR_MODE=managed scans and prefetching run on the container's
+ * managed executor, and its pool size limits how many can run. Blocking SolR
+ * requests run on a separate pool with a thread for every service-wide
+ * hitcount permit, so that they cannot be starved by the scans waiting for
+ * them. With EXECUTOR_MODE=virtual every task gets its own virtual thread,
+ * and concurrency towards SolR is only limited by the
+ * {@link HitcountLimiter}.
+ * <p>
+ * Virtual threads aren't managed by the container, so in virtual mode the
+ * tasks are run in the application's context (naming, class loader and
+ * security) captured by the container's {@link ContextService} when the
+ * executor is made, for the EJB and CDI calls they make. Without a context
+ * service (outside the container) the tasks run without a context.
+ * <p>
+ * In both modes the MDC of the submitting thread is set in the task, so
+ * that the tracking id follows the request.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class ScanExecutor implements Executor {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanExecutor.class);
+
+    public enum Mode {
+        MANAGED, VIRTUAL
+    }
+
+    @Inject
+    Config config;
+
+    @Resource(type = ManagedExecutorService.class)
+    ExecutorService mes;
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    @Resource
+    ContextService contextService;
+
+    private ExecutorService tasks;
+    private ExecutorService blocking;
+    private ExecutorService owned;
+    private Executor context = Runnable::run;
+    private final AtomicInteger running = new AtomicInteger();
+
+    public ScanExecutor() {
+    }
+
+    private ScanExecutor(Config config, ExecutorService mes) {
+        this.config = config;
+        this.mes = mes;
+        init();
+    }
+
+    static ScanExecutor instance(Config config, ExecutorService mes) {
+        return new ScanExecutor(config, mes);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (config.getExecutorMode() == Mode.VIRTUAL) {
+            log.info("Running scan tasks on virtual threads");
+            owned = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("scan-", 0).factory());
+            tasks = owned;
+            blocking = owned;
+            if (contextService != null)
+                context = contextService.createContextualProxy((Executor) Runnable::run, Executor.class);
+        } else {
+            owned = Executors.newFixedThreadPool(config.getParallelHitcountRequestsTotal(),
+                                                 threadFactory == null ? Executors.defaultThreadFactory() : threadFactory);
+            tasks = mes;
+            blocking = owned;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (owned != null)
+            owned.shutdownNow();
+    }
+
+    /**
+     * Run a scan or prefetch task
+     *
+     * @param command the task
+     */
+    @Override
+    public void execute(Runnable command) {
+        submit(tasks, command);
+    }
+
+    /**
+     * Executor for requests that block while waiting for SolR
+     *
+     * @return executor
+     */
+    public Executor blocking() {
+        return command -> submit(blocking, command);
+    }
+
+    private void submit(ExecutorService executor, Runnable command) {
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        executor.execute(() -> context.execute(() -> {
+            Map<String, String> before = MDC.getCopyOfContextMap();
+            setMdc(mdc);
+            running.incrementAndGet();
+            try {
+                command.run();
+            } finally {
+                running.decrementAndGet();
+                setMdc(before);
+            }
+        }));
+    }
+
+    private static void setMdc(Map<String, String> mdc) {
+        if (mdc == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(mdc);
+        }
+    }
+
+    @Gauge(name = "running", unit = MetricUnits.NONE,
+           description = "Number of scan tasks running")
+    public int getRunning() {
+        return running.get();
+    }
+}
@@ -18,25 +18,36 @@
  */
 package dk.dbc.scan.service;
 
+import dk.dbc.log.LogWith;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
-import jakarta.annotation.Resource;
-import jakarta.ejb.Stateless;
-import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Computes scan pages
+ * <p>
+ * Application scoped, since pages are computed on the executor, and the next
+ * page is prefetched in the background after the request that started it has
+ * returned, where a pooled bean instance may be in use by another request.
  *
  * @author Morten Bøgeskov (mb@dbc.dk)
  */
-@Stateless
+@ApplicationScoped
 public class ScanLogic {
 
     private static final Logger log = LoggerFactory.getLogger(ScanLogic.class);
@@ -52,158 +63,701 @@ public class ScanLogic {
     @Inject
     SolrApi solr;
 
-    @Resource(type = ManagedExecutorService.class)
-    ExecutorService mes;
+    @Inject
+    HitcountLimiter limiter;
+
+    @Inject
+    HitcountCache hitcountCache;
+
+    @Inject
+    HitcountDispatcher dispatcher;
+
+    @Inject
+    ScanCursorCache cursors;
+
+    @Inject
+    ScanPrefetcher prefetcher;
+
+    @Inject
+    NormalizeCache normalizeCache;
+
+    @Inject
+    Normalizer normalizer;
+
+    @Inject
+    OverFetch overFetch;
+
+    @Inject
+    ScanExecutor executor;
+
+    @Inject
+    CircuitBreakers breakers;
 
-    AtomicInteger hitCountInFlight;
-    List<ScanResponse.Term> termsFound;
+    @Inject
+    ScanMetrics metrics;
 
     public ScanLogic() {
     }
 
-    private ScanLogic(Config config, ProfileServiceCache psCache, SolrApi solr, ExecutorService mes) {
+    private ScanLogic(Config config, ProfileServiceCache psCache, SolrApi solr, HitcountLimiter limiter, HitcountCache hitcountCache, HitcountDispatcher dispatcher, ScanCursorCache cursors, ScanPrefetcher prefetcher, NormalizeCache normalizeCache, Normalizer normalizer, OverFetch overFetch, ScanExecutor executor, CircuitBreakers breakers, ScanMetrics metrics) {
         this.config = config;
         this.psCache = psCache;
         this.solr = solr;
-        this.mes = mes;
+        this.limiter = limiter;
+        this.hitcountCache = hitcountCache;
+        this.dispatcher = dispatcher;
+        this.cursors = cursors;
+        this.prefetcher = prefetcher;
+        this.normalizeCache = normalizeCache;
+        this.normalizer = normalizer;
+        this.overFetch = overFetch;
+        this.executor = executor;
+        this.breakers = breakers;
+        this.metrics = metrics;
     }
 
-    static ScanLogic instance(Config config, ProfileServiceCache psCache, SolrApi solr, ExecutorService mes) {
-        return new ScanLogic(config, psCache, solr, mes);
+    static ScanLogic instance(Config config, ProfileServiceCache psCache, SolrApi solr, HitcountLimiter limiter, HitcountCache hitcountCache, HitcountDispatcher dispatcher, ScanCursorCache cursors, ScanPrefetcher prefetcher, NormalizeCache normalizeCache, Normalizer normalizer, OverFetch overFetch, ScanExecutor executor, CircuitBreakers breakers, ScanMetrics metrics) {
+        return new ScanLogic(config, psCache, solr, limiter, hitcountCache, dispatcher, cursors, prefetcher, normalizeCache, normalizer, overFetch, executor, breakers, metrics);
     }
 
     /**
-     * Callback when an asynchronous call is done
+     * Compute how many terms to check in one hitcount request
+     * <p>
+     * The terms that needs to be queued are split evenly into as few batches
+     * as possible, none larger than max, so that no single request becomes
+     * slow because of its size.
+     *
+     * @param toQueue number of terms that should be checked
+     * @param max     largest allowed batch
+     * @return number of terms in next batch
      */
-    private synchronized void inFlightDone() {
-        hitCountInFlight.decrementAndGet();
-        notifyAll();
+    static int batchSize(int toQueue, int max) {
+        int batches = (toQueue + max - 1) / max;
+        return (toQueue + batches - 1) / batches;
     }
 
+
     /**
-     * Wait for all asynchronous calls to be completed
+     * Build result for scan, without holding a thread while waiting for SolR
+     * <p>
+     * Hitcount requests are sent speculatively in batches, and consumed in
+     * index order. As soon as enough terms with hits are known, the result is
+     * returned, and the outstanding hitcount requests are cancelled.
+     * <p>
+     * The terms that were fetched but not used, are stored in a cursor, so
+     * that the next page can continue from them. If enabled, the next page is
+     * then computed in the background, and served from memory when it is
+     * requested.
      *
-     * @throws InterruptedException If the thread is interrupted
+     * @param register   The register to scan in
+     * @param term       The term to scan with
+     * @param cont       If current term shouldn't be included. This has the
+     *                   side-effect that if term is included, then it is normalized, by solr
+     *                   using a field-analysis request
+     * @param count      Number of terms wanted in result
+     * @param agencyId   Agency that performs the request
+     * @param profile    The profile that is used by the agency
+     * @param cursor     Token from previous page (can be null)
+     * @param deadline   When to return what has been found
+     * @param trackingId Tracking
+     * @return future response to end-user, failed with {@link IOException} in
+     *         case of communication errors with solr, or
+     *         {@link SolrServerException} in case of request syntax errors or
+     *         invalid register name
      */
-    private synchronized void awaitAllInFlight() throws InterruptedException {
-        while (hitCountInFlight.get() != 0) {
-            wait();
+    public CompletableFuture<ScanResponse.Result> scanAsync(String register, String term, boolean cont, int count, String agencyId, String profile, String cursor, Deadline deadline, String trackingId) {
+        // Every scan needs terms and hitcounts, don't start one that cannot get them
+        try {
+            breakers.ensureAvailable(CircuitBreakers.TERMS, CircuitBreakers.SELECT);
+        } catch (CircuitBreakers.OpenException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        long before = System.nanoTime();
+        ScanEvents.ScanEvent event = new ScanEvents.ScanEvent();
+        event.begin();
+        ScanResponse.Result prefetched;
+        try {
+            prefetched = cont ? prefetcher.lookup(register, agencyId, profile, term, count) : null;
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
         }
+        CompletableFuture<ScanResponse.Result> future;
+        if (prefetched != null) {
+            log.debug("Using prefetched page");
+            future = CompletableFuture.completedFuture(prefetched);
+        } else {
+            future = compute(register, term, cont, count, agencyId, profile, cursor, deadline, trackingId);
+        }
+        return future.whenComplete((result, ex) -> {
+            try (LogWith logWith = LogWith.track(trackingId)) {
+                event.end(register, agencyId, profile, count, result, prefetched != null);
+                metrics.scanTime(register, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before));
+                if (result != null)
+                    prefetch(register, count, agencyId, profile, result, trackingId);
+            }
+        });
     }
 
     /**
-     * Get the number of terms that are valid for the result
+     * Start computing the next page in the background, if allowed
      *
-     * @return number of terms that are ready to be returned
+     * @param register   The register to scan in
+     * @param count      Number of terms wanted in result
+     * @param agencyId   Agency that performs the request
+     * @param profile    The profile that is used by the agency
+     * @param result     The page that has just been computed
+     * @param trackingId Tracking
      */
-    private int goodTermCount() {
-        return (int) termsFound.stream()
-                .filter(ScanResponse.Term::hasTerms)
-                .count();
+    private void prefetch(String register, int count, String agencyId, String profile, ScanResponse.Result result, String trackingId) {
+        String continueAfter = result.getContinueAfter();
+        String cursor = result.getCursor();
+        if (continueAfter == null || !prefetcher.tryStart())
+            return;
+        try {
+            // Started on the executor, so that the page that is being returned isn't held up
+            CompletableFuture.supplyAsync(() -> {
+                try (LogWith logWith = LogWith.track(trackingId)) {
+                    log.debug("Prefetching page after: {}", continueAfter);
+                    return compute(register, continueAfter, true, count, agencyId, profile, cursor, Deadline.in(config.getScanTimeout()), trackingId);
+                }
+            }, executor)
+                    .thenCompose(next -> next)
+                    .whenComplete((next, ex) -> {
+                        try (LogWith logWith = LogWith.track(trackingId)) {
+                            if (ex != null) {
+                                Throwable cause = unwrap(ex);
+                                log.warn("Error prefetching page after: {}: {}", continueAfter, cause.getMessage());
+                                log.debug("Error prefetching page after: {}: ", continueAfter, cause);
+                            } else if (!next.isPartial()) {
+                                prefetcher.store(register, agencyId, profile, continueAfter, count, next);
+                            }
+                        } finally {
+                            prefetcher.done();
+                        }
+                    });
+        } catch (RuntimeException ex) {
+            prefetcher.done();
+            log.warn("Could not start prefetching: {}", ex.getMessage());
+        }
     }
 
     /**
-     * Build result for scan
+     * Compute a page of the scan
+     * <p>
+     * The term is normalized while the filter query is looked up, then
+     * {@link Page} takes over. If the deadline passes, the terms that have
+     * been validated so far are returned as a partial result
      *
      * @param register   The register to scan in
      * @param term       The term to scan with
-     * @param cont       If current term shouldn't be included. This has the
-     *                   side-effect that if term is included, then it is normalized, by solr
-     *                   using a field-analysis request
+     * @param cont       If current term shouldn't be included
      * @param count      Number of terms wanted in result
      * @param agencyId   Agency that performs the request
      * @param profile    The profile that is used by the agency
+     * @param cursor     Token from previous page (can be null)
+     * @param deadline   When to return what has been found
      * @param trackingId Tracking
-     * @return Response to end-user
-     * @throws IOException          In case of communication errors with solr
-     * @throws SolrServerException  In case of request syntax errors or invalid
-     *                              register name
-     * @throws InterruptedException If something is timing out, or the process
-     *                              is being shut down
+     * @return future response to end-user
+     */
+    private CompletableFuture<ScanResponse.Result> compute(String register, String term, boolean cont, int count, String agencyId, String profile, String cursor, Deadline deadline, String trackingId) {
+        Page page = new Page(register, term, cont, count, agencyId, profile, deadline, trackingId);
+        CompletableFuture<String> from;
+        CompletableFuture<String> filterQuery;
+        try {
+            ScanCursor resume = cont ? cursors.lookup(cursor, register, agencyId, profile, term) : null;
+            if (resume != null) {
+                log.debug("resume = {}", resume);
+                page.terms = resume.getTerms().iterator();
+                page.term = resume.getNextTerm();
+                from = CompletableFuture.completedFuture(page.term);
+            } else if (!cont && !term.trim().isEmpty()) {
+                from = normalize(register, agencyId, term, deadline);
+            } else {
+                from = CompletableFuture.completedFuture(term);
+            }
+            filterQuery = supplyAsync(() -> psCache.filterQueryFor(agencyId, profile, trackingId), executor.blocking());
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return deadline.bound(from)
+                .thenCombine(deadline.bound(filterQuery), page::start)
+                .thenCompose(Page::run)
+                .exceptionallyCompose(page::failed);
+    }
+
+    /**
+     * Normalize a term on the blocking executor
+     * <p>
+     * A request to SolR gets what is left of the time when it is sent
+     *
+     * @param register The register to scan in
+     * @param agencyId Agency that performs the request
+     * @param term     The term to normalize
+     * @param deadline When to give up
+     * @return future normalized term
+     */
+    private CompletableFuture<String> normalize(String register, String agencyId, String term, Deadline deadline) {
+        ScanEvents.NormalizeEvent normalizeEvent = new ScanEvents.NormalizeEvent();
+        normalizeEvent.begin();
+        long before = System.nanoTime();
+        CompletableFuture<String> normalized = supplyAsync(() -> normalizeCache.normalize(register, term, () -> normalizer.normalize(register, term, deadline.timeout())), executor.blocking());
+        normalized.whenComplete((value, ex) -> {
+            normalizeEvent.end(register, agencyId, ex);
+            if (ex == null) {
+                metrics.normalize(register, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before));
+                log.debug("normalized = {}", value);
+            }
+        });
+        return normalized;
+    }
+
+    /**
+     * Run a blocking call on an executor
+     *
+     * @param <T>      type of value
+     * @param call     the call
+     * @param executor where to run it
+     * @return future value
+     */
+    private static <T> CompletableFuture<T> supplyAsync(Callable<T> call, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(call.call());
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * The cause of a failed future
+     *
+     * @param ex what the future failed with
+     * @return the exception the failure started with
      */
-    public ScanResponse.Result scan(String register, String term, boolean cont, int count, String agencyId, String profile, String trackingId) throws IOException, SolrServerException, InterruptedException {
-        String scanRegister = register + "_" + agencyId + "_" + profile;
-        hitCountInFlight = new AtomicInteger(0);
-        termsFound = new ArrayList<>();
-
-        if (!cont) {
-            if (!term.trim().isEmpty())
-                term = solr.normalize(register, term);
-            log.debug("normalized = {}", term);
-        }
-
-        String filterQuery = psCache.filterQueryFor(agencyId, profile, trackingId);
-        log.debug("filterQuery = {}", filterQuery);
-
-        Iterator<String> terms = EMPTY_ITERATOR;
-        while (goodTermCount() < count) {
-            if (!terms.hasNext()) {
-                if (term == null) {// We've reached end of index
-                    log.debug("We've reached the end of the index");
-                    break;
+    private static Throwable unwrap(Throwable ex) {
+        while (( ex instanceof CompletionException || ex instanceof ExecutionException ) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+    /**
+     * The computation of a page
+     * <p>
+     * The page advances as far as it can without waiting, and then continues
+     * on the executor, when what it is waiting for (terms, a hitcount permit
+     * or the first pending batch) completes, or the deadline passes. Steps
+     * never run concurrently, so the state isn't guarded.
+     */
+    private final class Page {
+
+        private final String register;
+        private final int count;
+        private final String agencyId;
+        private final String profile;
+        private final Deadline deadline;
+        private final String trackingId;
+        private final String scanRegister;
+        private final String continueFrom; // Where to continue from, if nothing is found before the deadline
+        private final HitcountLimiter.RequestLimit limit;
+        private final List<ScanResponse.Term> responseTerms;
+        private final List<ScanResponse.Term> leftover;
+        private final ArrayDeque<Batch> pending;
+        private final ScanMetrics.Stats stats;
+        private Iterator<ScanResponse.Term> terms;
+        private String term;
+        private boolean cont;
+        private String filterQuery;
+        private OverFetch.Estimate estimate;
+        private int overhead;
+        private int inFlight; // Number of terms in pending batches
+        private boolean partial;
+        private CompletableFuture<List<String>> fetched;
+        private int fetching;
+        private long fetchStarted;
+        private CompletableFuture<Boolean> permit;
+
+        private Page(String register, String term, boolean cont, int count, String agencyId, String profile, Deadline deadline, String trackingId) {
+            this.register = register;
+            this.count = count;
+            this.agencyId = agencyId;
+            this.profile = profile;
+            this.deadline = deadline;
+            this.trackingId = trackingId;
+            this.scanRegister = register + "_" + agencyId + "_" + profile;
+            this.continueFrom = cont ? term : null;
+            this.limit = limiter.forRequest(agencyId);
+            this.responseTerms = new ArrayList<>(count);
+            this.leftover = new ArrayList<>();
+            this.pending = new ArrayDeque<>();
+            this.stats = new ScanMetrics.Stats();
+            this.terms = EMPTY_ITERATOR;
+            this.term = term;
+            this.cont = cont;
+            this.partial = false;
+        }
+
+        private Page start(String term, String filterQuery) {
+            this.term = term;
+            this.filterQuery = filterQuery;
+            log.debug("filterQuery = {}", filterQuery);
+            // Number of terms to have hitcount requests in flight for, beyond
+            // what is needed to fill the result
+            this.estimate = overFetch.estimate(scanRegister);
+            this.overhead = estimate.overhead(count);
+            log.debug("overhead = {}", overhead);
+            return this;
+        }
+
+        /**
+         * Advance until there's something to wait for, and continue when it
+         * is done
+         *
+         * @return future page
+         */
+        private CompletableFuture<ScanResponse.Result> run() {
+            try (LogWith logWith = LogWith.track(trackingId)) {
+                CompletableFuture<?> waitFor = advance();
+                while (waitFor != null && waitFor.isDone()) {
+                    waitFor = advance();
                 }
-                int toGo = count - goodTermCount();
-                // We need to fetch extra terms, so that if any gives a 0-hit
-                // they can be skipped. These number +5 +12.5%are just gut
-                // feeling, that it should be sufficient.
-                int fetch = toGo + 5 + toGo / 8;
-                log.debug("fetch: {} new terms from {}", fetch, term);
-                List<String> scan = solr.scan(scanRegister, term, cont, fetch, trackingId);
-                cont = true;
-                term = scan.size() != fetch ? null : scan.get(fetch - 1);
-                terms = scan.iterator();
+                if (waitFor == null)
+                    return CompletableFuture.completedFuture(finish());
+                return waitFor.handle((value, ex) -> this)
+                        .thenComposeAsync(Page::run, executor);
+            } catch (TimeoutException | RuntimeException ex) {
+                return CompletableFuture.failedFuture(ex);
             }
-            while (terms.hasNext()) {
-                log.trace("should we check hitcount");
-                int goodTermCount = goodTermCount();
-                log.trace("goodTermCount = {}", goodTermCount);
-                if (goodTermCount >= count)
-                    break;
-                int toCheck = count - goodTermCount;
-                log.trace("toGo = {}", toCheck);
-                int notChecked = toCheck - hitCountInFlight.get();
-                log.trace("notChecked = {}", notChecked);
-                int toQueue = notChecked + 3; // overhead
-                log.trace("toQueue = {}", toQueue);
-                if (toQueue <= 0)
-                    break;
-
-                String word = terms.next();
-                if (word.trim().isEmpty())
-                    continue; // Skip blank terms (you cannot search them)
-
-                ScanResponse.Term checkTerm = new ScanResponse.Term(word);
-                termsFound.add(checkTerm);
-                log.debug("added checkTerm = {}", checkTerm);
-                hitCountInFlight.incrementAndGet();
-                mes.submit(() -> {
-                    long hitcount = 0;
-                    try {
-                        hitcount = solr.getHitCount(register, checkTerm.getTerm(), filterQuery);
-                    } catch (SolrServerException | IOException ex) {
-                        log.error("Error checking real hit count for: {}: {}", checkTerm.getTerm(), ex.getMessage());
-                        log.debug("Error checking real hit count for: {}: ", checkTerm.getTerm(), ex);
-                    } finally {
-                        checkTerm.setCount(hitcount);
-                        inFlightDone();
-                        log.debug("changed checkTerm = {}", checkTerm);
+        }
+
+        /**
+         * Make as much progress as possible without waiting
+         *
+         * @return what to wait for, or null if the page is complete
+         * @throws TimeoutException If the deadline passed
+         */
+        private CompletableFuture<?> advance() throws TimeoutException {
+            while (responseTerms.size() < count) {
+                while (responseTerms.size() + inFlight < count + overhead) {
+                    int toGo = count + overhead - responseTerms.size() - inFlight;
+                    log.trace("toGo = {}", toGo);
+                    if (!terms.hasNext()) {
+                        if (term == null) {// We've reached end of index
+                            log.debug("We've reached the end of the index");
+                            break;
+                        }
+                        if (fetched == null)
+                            fetch(toGo);
+                        if (!fetched.isDone())
+                            return waitFor(fetched, "Fetching terms");
+                        List<String> scan = fetched.join();
+                        fetched = null;
+                        metrics.terms(register, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fetchStarted));
+                        stats.fetched(scan.size());
+                        cont = true;
+                        term = scan.size() != fetching ? null : scan.get(fetching - 1);
+                        terms = scan.stream()
+                                .map(ScanResponse.Term::new)
+                                .iterator();
+                        continue;
+                    }
+                    // Only wait for a permit, if there's nothing else to do
+                    if (!pending.isEmpty()) {
+                        if (!limit.tryAcquire())
+                            break;
+                    } else {
+                        if (permit == null) {
+                            permit = limit.acquireAsync(deadline);
+                            if (!permit.isDone())
+                                return permit;
+                        }
+                        boolean acquired = permit.join();
+                        permit = null;
+                        if (!acquired)
+                            throw new TimeoutException("Waiting for hitcount permit");
+                    }
+                    int batchSize = batchSize(toGo, config.getHitcountBatchSize());
+                    log.trace("batchSize = {}", batchSize);
+                    List<ScanResponse.Term> checkTerms = new ArrayList<>(batchSize);
+                    while (checkTerms.size() < batchSize && terms.hasNext()) {
+                        ScanResponse.Term checkTerm = terms.next();
+                        if (checkTerm.getTerm().trim().isEmpty()) {
+                            stats.blank();
+                            continue; // Skip blank terms (you cannot search them)
+                        }
+                        checkTerms.add(checkTerm);
+                    }
+                    if (checkTerms.isEmpty()) {
+                        limit.release();
+                        continue;
                     }
+                    log.debug("added checkTerms = {}", checkTerms);
+                    pending.add(new Batch(checkTerms, limit, register, agencyId, scanRegister, filterQuery, deadline.timeout()));
+                    inFlight += checkTerms.size();
+                    stats.inFlight(inFlight);
+                }
+                // Batches are consumed in index order, a batch stays pending
+                // until it is used, so that it is carried over if time runs out
+                Batch batch = pending.peek();
+                if (batch == null)
+                    break; // Nothing more to check
+                if (!batch.isDone())
+                    return waitFor(batch.future, "Checking hitcounts");
+                List<ScanResponse.Term> checkTerms = batch.checked();
+                pending.poll();
+                inFlight -= batch.size();
+                checkTerms.forEach(stats::validated);
+                for (int i = 0 ; i < checkTerms.size() ; i++) {
+                    if (responseTerms.size() == count) {
+                        leftover.addAll(batch.leftover(i));
+                        break;
+                    }
+                    ScanResponse.Term checkTerm = checkTerms.get(i);
+                    if (checkTerm.hasTerms())
+                        responseTerms.add(checkTerm);
+                }
+            }
+            return null;
+        }
+
+        private void fetch(int toGo) {
+            // We need to fetch extra terms, so that if any gives a 0-hit
+            // they can be skipped. How many is learned from previous scans
+            int fetch = estimate.fetch(toGo);
+            log.debug("fetch: {} new terms from {}", fetch, term);
+            ScanEvents.TermsEvent termsEvent = new ScanEvents.TermsEvent();
+            termsEvent.begin();
+            fetching = fetch;
+            fetchStarted = System.nanoTime();
+            fetched = solr.scanAsync(scanRegister, term, cont, fetch, deadline.timeout(), trackingId, executor.blocking());
+            fetched.whenComplete((found, ex) -> termsEvent.end(register, agencyId, fetch, found == null ? 0 : found.size(), ex));
+        }
+
+        /**
+         * Wait for a request that isn't done, no longer than the deadline
+         *
+         * @param future the request
+         * @param what   what is being waited for (for the log)
+         * @return future that completes when the request does, or the
+         *         deadline passes
+         * @throws TimeoutException If the deadline has passed
+         */
+        private CompletableFuture<?> waitFor(CompletableFuture<?> future, String what) throws TimeoutException {
+            if (deadline.expired())
+                throw new TimeoutException(what);
+            return deadline.bound(future);
+        }
+
+        /**
+         * Handle a failed page, a page that ran out of time, or where a
+         * hitcount request failed, is returned with the terms found so far
+         *
+         * @param ex what the page failed with
+         * @return future partial page, or the failure
+         */
+        private CompletableFuture<ScanResponse.Result> failed(Throwable ex) {
+            Throwable cause = unwrap(ex);
+            try (LogWith logWith = LogWith.track(trackingId)) {
+                if (cause instanceof HitcountFailedException) {
+                    // Stop before the terms that couldn't be checked, rather than skipping them
+                    log.warn("Scan stopped at a failed hitcount request ({}) with {} of {} terms", cause.getMessage(), responseTerms.size(), count);
+                    partial = true;
+                    return CompletableFuture.completedFuture(finish());
+                }
+                if (!( cause instanceof TimeoutException || cause instanceof SolrApi.TimeAllowedExceededException )) {
+                    cancel();
+                    return CompletableFuture.failedFuture(cause);
+                }
+                log.warn("Scan ran out of time ({}) with {} of {} terms", cause.getMessage(), responseTerms.size(), count);
+                partial = true;
+                return CompletableFuture.completedFuture(finish());
+            }
+        }
+
+        /**
+         * Cancel what is still outstanding, carrying the terms over to the
+         * cursor
+         */
+        private void cancel() {
+            while (!pending.isEmpty()) {
+                Batch batch = pending.poll();
+                leftover.addAll(batch.leftover(0));
+                batch.cancel();
+            }
+            if (fetched != null)
+                fetched.cancel(true);
+            if (permit != null) {
+                permit.thenAccept(acquired -> {
+                    if (acquired)
+                        limit.release();
                 });
             }
         }
-        awaitAllInFlight();
-        log.debug("all: termsFound = {}", termsFound);
-
-        List<ScanResponse.Term> allResponseTerms = termsFound.stream()
-                .filter(ScanResponse.Term::hasTerms)
-                .toList();
-        int totalHitValidated = allResponseTerms.size();
-        int validTermCount = Integer.min(count, totalHitValidated);
-        List<ScanResponse.Term> responseTerms = allResponseTerms.subList(0, validTermCount);
-        // To get data to tune the number of infligt hitcount requests in overhead
-        log.info("Extra terms hit validated: {}", totalHitValidated - validTermCount);
-        log.debug("responseTerms = {}", responseTerms);
-        String continueAfter = validTermCount != count ? null : responseTerms.get(count - 1).getTerm();
-        return new ScanResponse.Result(continueAfter, responseTerms);
+
+        private ScanResponse.Result finish() {
+            cancel();
+            terms.forEachRemaining(leftover::add);
+            // To get data to tune the number of infligt hitcount requests in overhead
+            long wasted = leftover.stream().filter(t -> !t.notVerified()).count();
+            log.info("Extra terms hit validated: {}", wasted);
+            stats.wasted(wasted);
+            metrics.scan(register, stats);
+            log.debug("responseTerms = {}", responseTerms);
+            String continueAfter;
+            if (responseTerms.size() == count || (partial && !responseTerms.isEmpty())) {
+                continueAfter = responseTerms.get(responseTerms.size() - 1).getTerm();
+            } else if (partial) {
+                continueAfter = continueFrom;
+            } else {
+                continueAfter = null;
+            }
+            ScanResponse.Result result = new ScanResponse.Result(continueAfter, responseTerms);
+            result.setPartial(partial);
+            if (continueAfter != null)
+                result.setCursor(cursors.store(new ScanCursor(register, agencyId, profile, continueAfter, leftover, term)));
+            return result;
+        }
+    }
+
+    /**
+     * A number of terms, that are having their hitcount checked asynchronously
+     * <p>
+     * The batch holds a permit from the limiter, that is released when the
+     * request completes. Terms that already have a hitcount (from a cursor)
+     * are not checked again. A batch that isn't needed is cancelled, which
+     * aborts the request, unless another scan is waiting for the same
+     * hitcounts.
+     */
+    private final class Batch {
+
+        private final List<ScanResponse.Term> checkTerms;
+        private final CompletableFuture<?> request;
+        private final CompletableFuture<Void> future;
+        private volatile boolean failed;
+        private volatile boolean timedOut;
+        private volatile CircuitBreakers.OpenException rejected;
+        private volatile Throwable error;
+
+        private Batch(List<ScanResponse.Term> checkTerms, HitcountLimiter.RequestLimit limit, String register, String agencyId, String scanRegister, String filterQuery, long timeAllowed) {
+            this.checkTerms = checkTerms;
+            this.failed = false;
+            long before = System.nanoTime();
+            List<ScanResponse.Term> unverified = checkTerms.stream()
+                    .filter(ScanResponse.Term::notVerified)
+                    .toList();
+            if (unverified.isEmpty()) {
+                limit.release();
+                this.request = CompletableFuture.completedFuture(null);
+                this.future = CompletableFuture.completedFuture(null);
+                return;
+            }
+            List<String> words = unverified.stream()
+                    .map(ScanResponse.Term::getTerm)
+                    .toList();
+            ScanEvents.HitcountEvent event = new ScanEvents.HitcountEvent();
+            event.begin();
+            CompletableFuture<Map<String, Long>> request;
+            try {
+                request = hitcountCache.getHitCountsAsync(register, words, filterQuery,
+                                                          missing -> dispatcher.getHitCounts(register, missing, filterQuery, timeAllowed, executor.blocking()));
+            } catch (RuntimeException ex) {
+                limit.release();
+                throw ex;
+            }
+            this.request = request;
+            this.future = request.handle((hitcounts, ex) -> {
+                limit.release();
+                metrics.hitcounts(register, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before));
+                event.end(register, agencyId, words.size(), ex);
+                if (request.isCancelled()) {
+                    failed = true;
+                    log.debug("Cancelled checking real hit count for: {}", words);
+                    return null;
+                }
+                if (ex != null) {
+                    failed = true;
+                    Throwable cause = unwrap(ex);
+                    timedOut = cause instanceof SolrApi.TimeAllowedExceededException || cause instanceof TimeoutException;
+                    if (cause instanceof CircuitBreakers.OpenException)
+                        rejected = (CircuitBreakers.OpenException) cause;
+                    error = cause;
+                    log.error("Error checking real hit count for: {}: {}", words, ex.getMessage());
+                    log.debug("Error checking real hit count for: {}: ", words, ex);
+                    return null; // The terms stay unverified
+                }
+                overFetch.record(scanRegister, words.size(),
+                                 (int) words.stream().filter(w -> hitcounts.getOrDefault(w, 0L) == 0L).count());
+                for (ScanResponse.Term checkTerm : unverified) {
+                    checkTerm.setCount(hitcounts.getOrDefault(checkTerm.getTerm(), 0L));
+                }
+                log.debug("changed checkTerms = {}", checkTerms);
+                return null;
+            });
+        }
+
+        private int size() {
+            return checkTerms.size();
+        }
+
+        private boolean isDone() {
+            return future.isDone();
+        }
+
+        /**
+         * The terms of a completed batch
+         *
+         * @return the terms with their hitcount set
+         * @throws TimeoutException         If the request exceeded timeAllowed
+         * @throws HitcountFailedException If the request failed otherwise
+         */
+        private List<ScanResponse.Term> checked() throws TimeoutException {
+            if (rejected != null)
+                throw rejected;
+            if (timedOut)
+                throw new TimeoutException("Hitcount request exceeded timeAllowed");
+            if (error != null)
+                throw new HitcountFailedException(error);
+            return checkTerms;
+        }
+
+        /**
+         * Abort the hitcount request, the permit is released when it has
+         * stopped
+         */
+        private void cancel() {
+            request.cancel(true);
+        }
+
+        /**
+         * The terms that can be carried over to a cursor
+         * <p>
+         * If the hitcount request has completed successfully, the terms are
+         * included with their hitcount, otherwise unverified copies are
+         * made, since a running request might still change them
+         *
+         * @param from index of first term to include
+         * @return list of terms
+         */
+        private List<ScanResponse.Term> leftover(int from) {
+            List<ScanResponse.Term> terms = checkTerms.subList(from, checkTerms.size());
+            if (future.isDone() && !failed)
+                return terms;
+            return terms.stream()
+                    .map(t -> new ScanResponse.Term(t.getTerm()))
+                    .toList();
+        }
+    }
+
+    /**
+     * A hitcount request failed, the terms in it have no hitcount
+     */
+    private static final class HitcountFailedException extends RuntimeException {
+
+        private HitcountFailedException(Throwable cause) {
+            super(cause.getMessage(), cause);
+        }
     }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+import static java.util.Map.entry;
+
+/**
+ * Histograms of how scans spend their time and terms
+ * <p>
+ * All are tagged with the register. To keep the number of series bounded,
+ * only the first METRICS_MAX_REGISTERS registers that a scan found terms in
+ * get their own tag, the rest are tagged "other". Registers are taken from
+ * the request, so a register that doesn't exist shouldn't use up a tag.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class ScanMetrics {
+
+    static final String OTHER = "other";
+
+    private static final Map<String, Metadata> METADATA = Map.ofEntries(
+            entry("scanTime", metadata("scanTime", MetricUnits.MILLISECONDS, "Time from a scan is started until its page is ready")),
+            entry("normalizeTime", metadata("normalizeTime", MetricUnits.MILLISECONDS, "Time to normalize the scan term")),
+            entry("termsTime", metadata("termsTime", MetricUnits.MILLISECONDS, "Time of a /terms request")),
+            entry("hitcountTime", metadata("hitcountTime", MetricUnits.MILLISECONDS, "Time of a batch of hitcount lookups")),
+            entry("termsFetched", metadata("termsFetched", MetricUnits.NONE, "Number of terms fetched by a scan")),
+            entry("termsRoundTrips", metadata("termsRoundTrips", MetricUnits.NONE, "Number of /terms requests made by a scan")),
+            entry("termsValidated", metadata("termsValidated", MetricUnits.NONE, "Number of terms hit validated by a scan")),
+            entry("termsZeroHit", metadata("termsZeroHit", MetricUnits.NONE, "Number of hit validated terms without hits in a scan")),
+            entry("termsBlank", metadata("termsBlank", MetricUnits.NONE, "Number of blank terms skipped by a scan")),
+            entry("termsWasted", metadata("termsWasted", MetricUnits.NONE, "Number of hit validated terms not used by a scan")),
+            entry("hitcountPeakInFlight", metadata("hitcountPeakInFlight", MetricUnits.NONE, "Max number of terms with hitcount lookups in flight in a scan")));
+
+    @Inject
+    Config config;
+
+    @Inject
+    MetricRegistry registry;
+
+    private final Set<String> registers = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public ScanMetrics() {
+    }
+
+    private ScanMetrics(Config config, MetricRegistry registry) {
+        this.config = config;
+        this.registry = registry;
+    }
+
+    /**
+     * Construct metrics
+     *
+     * @param config   configuration
+     * @param registry where to register histograms, null to disable
+     * @return metrics
+     */
+    static ScanMetrics instance(Config config, MetricRegistry registry) {
+        return new ScanMetrics(config, registry);
+    }
+
+    public void scanTime(String register, long millis) {
+        update("scanTime", tag(register), millis);
+    }
+
+    public void normalize(String register, long millis) {
+        update("normalizeTime", tag(register), millis);
+    }
+
+    public void terms(String register, long millis) {
+        update("termsTime", tag(register), millis);
+    }
+
+    public void hitcounts(String register, long millis) {
+        update("hitcountTime", tag(register), millis);
+    }
+
+    /**
+     * Record the counts from a completed scan
+     * <p>
+     * A scan that found terms proves that the register exists, and gives it
+     * its own tag if there's room
+     *
+     * @param register the register scanned
+     * @param stats    the counts
+     */
+    public void scan(String register, Stats stats) {
+        String tag = stats.fetched > 0 ? admit(register) : tag(register);
+        update("termsFetched", tag, stats.fetched);
+        update("termsRoundTrips", tag, stats.roundTrips);
+        update("termsValidated", tag, stats.validated);
+        update("termsZeroHit", tag, stats.zeroHits);
+        update("termsBlank", tag, stats.blank);
+        update("termsWasted", tag, stats.wasted);
+        update("hitcountPeakInFlight", tag, stats.peakInFlight);
+    }
+
+    private void update(String name, String tag, long value) {
+        if (registry == null)
+            return;
+        histograms.computeIfAbsent(name + "|" + tag, k -> registry.histogram(METADATA.get(name), new Tag("register", tag)))
+                .update(value);
+    }
+
+    /**
+     * The tag value for a register
+     *
+     * @param register name of the register
+     * @return the register if it has its own tag, otherwise "other"
+     */
+    String tag(String register) {
+        return registers.contains(register) ? register : OTHER;
+    }
+
+    /**
+     * Give a register its own tag, if there's room
+     *
+     * @param register name of a register known to exist
+     * @return the register or "other"
+     */
+    String admit(String register) {
+        if (registers.contains(register))
+            return register;
+        synchronized (registers) {
+            if (registers.size() < config.getMetricsMaxRegisters()) {
+                registers.add(register);
+                return register;
+            }
+        }
+        return OTHER;
+    }
+
+    private static Metadata metadata(String name, String unit, String description) {
+        return Metadata.builder()
+                .withName(name)
+                .withUnit(unit)
+                .withDescription(description)
+                .build();
+    }
+
+    /**
+     * Counts collected while computing a scan
+     */
+    public static class Stats {
+
+        private long fetched;
+        private long roundTrips;
+        private long validated;
+        private long zeroHits;
+        private long blank;
+        private long wasted;
+        private long peakInFlight;
+
+        public void fetched(int terms) {
+            roundTrips++;
+            fetched += terms;
+        }
+
+        public void validated(ScanResponse.Term term) {
+            if (!term.notVerified()) {
+                validated++;
+                if (!term.hasTerms())
+                    zeroHits++;
+            }
+        }
+
+        public void blank() {
+            blank++;
+        }
+
+        public void wasted(long terms) {
+            wasted = terms;
+        }
+
+        public void inFlight(int terms) {
+            peakInFlight = Math.max(peakInFlight, terms);
+        }
+    }
+}
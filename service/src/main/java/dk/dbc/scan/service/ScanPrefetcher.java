@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Storage and throttling of speculatively computed next pages
+ * <p>
+ * When a page has been served, the next page is computed in the background,
+ * and stored here keyed by register/agency/profile/count and the term it
+ * continues after. Prefetching is limited to PREFETCH_PARALLEL concurrent
+ * pages, and is skipped entirely when less than half of the service-wide
+ * hitcount permits are free, so that it doesn't compete with interactive
+ * requests.
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+@ApplicationScoped
+public class ScanPrefetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanPrefetcher.class);
+
+    static final String CACHE_NAME = "scanPrefetch";
+
+    private static final ObjectMapper O = JsonMapper
+            .builder()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .build();
+
+    @Inject
+    Config config;
+
+    @Inject
+    HitcountLimiter limiter;
+
+    @Inject
+    CacheManager cacheManager;
+
+    private Cache<String, String> cache;
+    private Semaphore running;
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ScanPrefetcher() {
+    }
+
+    private ScanPrefetcher(Config config, HitcountLimiter limiter, CacheManager cacheManager) {
+        this.config = config;
+        this.limiter = limiter;
+        this.cacheManager = cacheManager;
+        init();
+    }
+
+    static ScanPrefetcher instance(Config config, HitcountLimiter limiter, CacheManager cacheManager) {
+        return new ScanPrefetcher(config, limiter, cacheManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (cacheManager == null || config.getPrefetchParallel() == 0) {
+            log.info("Prefetching of next page is disabled");
+            return;
+        }
+        running = new Semaphore(config.getPrefetchParallel());
+        cache = Caches.bounded(cacheManager, CACHE_NAME, String.class, String.class,
+                               config.getPrefetchCacheSize(), config.getPrefetchTimeout());
+    }
+
+    /**
+     * Find a prefetched page
+     *
+     * @param register The register to scan in
+     * @param agencyId Agency that performs the request
+     * @param profile  The profile that is used by the agency
+     * @param term     The term to continue after
+     * @param count    Number of terms wanted in result
+     * @return the page or null if it hasn't been prefetched
+     */
+    public ScanResponse.Result lookup(String register, String agencyId, String profile, String term, int count) {
+        if (cache == null)
+            return null;
+        try {
+            String json = cache.get(key(register, agencyId, profile, term, count));
+            if (json != null) {
+                hits.incrementAndGet();
+                return O.readValue(json, ScanResponse.Result.class);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Error reading prefetched page: {}", ex.getMessage());
+            log.debug("Error reading prefetched page: ", ex);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a prefetched page
+     *
+     * @param register The register to scan in
+     * @param agencyId Agency that performs the request
+     * @param profile  The profile that is used by the agency
+     * @param term     The term the page continues after
+     * @param count    Number of terms wanted in result
+     * @param result   The page
+     */
+    public void store(String register, String agencyId, String profile, String term, int count, ScanResponse.Result result) {
+        try {
+            cache.put(key(register, agencyId, profile, term, count), O.writeValueAsString(result));
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Error storing prefetched page: {}", ex.getMessage());
+            log.debug("Error storing prefetched page: ", ex);
+        }
+    }
+
+    /**
+     * Reserve a slot for prefetching a page
+     * <p>
+     * If true is returned {@link #done()} has to be called when the prefetch
+     * is completed
+     *
+     * @return if prefetch is allowed
+     */
+    public boolean tryStart() {
+        if (cache == null)
+            return false;
+        if (limiter.getPermitsAvailable() * 2 < config.getParallelHitcountRequestsTotal() ||
+            !running.tryAcquire()) {
+            skipped.incrementAndGet();
+            return false;
+        }
+        started.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Release the slot reserved by {@link #tryStart()}
+     */
+    public void done() {
+        running.release();
+    }
+
+    @Gauge(name = "started", unit = MetricUnits.NONE,
+           description = "Number of next pages prefetched")
+    public long getStarted() {
+        return started.get();
+    }
+
+    @Gauge(name = "skipped", unit = MetricUnits.NONE,
+           description = "Number of next pages not prefetched due to load")
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    @Gauge(name = "hitRate", unit = MetricUnits.PERCENT,
+           description = "Percentage of continued scans served from a prefetched page")
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : h * 100.0 / total;
+    }
+
+    private static String key(String register, String agencyId, String profile, String term, int count) {
+        return register + "|" + agencyId + "|" + profile + "|" + count + "|" + term;
+    }
+}
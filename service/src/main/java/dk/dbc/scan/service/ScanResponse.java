@@ -95,18 +95,22 @@ public class ScanResponse {
         private String register;
         private Integer count;
         private Boolean cont;
+        private String cursor;
+        private Integer timeout;
         private String trackingId;
 
         public Request() {
         }
 
-        public Request(Integer agencyId, String profile, String term, String register, Integer count, Boolean cont, String trackingId) {
+        public Request(Integer agencyId, String profile, String term, String register, Integer count, Boolean cont, String cursor, Integer timeout, String trackingId) {
             this.agencyId = agencyId;
             this.profile = profile;
             this.term = term;
             this.register = register;
             this.count = count;
             this.cont = cont;
+            this.cursor = cursor;
+            this.timeout = timeout;
             this.trackingId = trackingId;
         }
 
@@ -158,6 +162,22 @@ public class ScanResponse {
             this.cont = cont;
         }
 
+        public String getCursor() {
+            return cursor;
+        }
+
+        public void setCursor(String cursor) {
+            this.cursor = cursor;
+        }
+
+        public Integer getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Integer timeout) {
+            this.timeout = timeout;
+        }
+
         public String getTrackingId() {
             return trackingId;
         }
@@ -168,13 +188,15 @@ public class ScanResponse {
 
         @Override
         public String toString() {
-            return "RequestParam{" + "agencyId=" + agencyId + ", profile=" + profile + ", term=" + term + ", register=" + register + ", count=" + count + ", continue=" + cont + ", trackingId=" + trackingId + '}';
+            return "RequestParam{" + "agencyId=" + agencyId + ", profile=" + profile + ", term=" + term + ", register=" + register + ", count=" + count + ", continue=" + cont + ", cursor=" + cursor + ", timeout=" + timeout + ", trackingId=" + trackingId + '}';
         }
     }
 
     public static class Result {
 
         private String continueAfter;
+        private String cursor;
+        private boolean partial;
         private List<Term> terms;
 
         public Result() {
@@ -193,6 +215,37 @@ public class ScanResponse {
             this.continueAfter = continueAfter;
         }
 
+        /**
+         * Opaque token, that can be passed as cursor along with
+         * continueAfter, to make the next page cheaper
+         *
+         * @return token or null
+         */
+        public String getCursor() {
+            return cursor;
+        }
+
+        public void setCursor(String cursor) {
+            this.cursor = cursor;
+        }
+
+        /**
+         * If the scan ran out of time, or a hitcount request failed, and the
+         * terms are only the ones that were validated before that
+         * <p>
+         * The scan can be continued from continueAfter. If that is null, the
+         * request should be repeated.
+         *
+         * @return if the result is incomplete
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+
+        public void setPartial(boolean partial) {
+            this.partial = partial;
+        }
+
         public List<Term> getTerms() {
             return terms;
         }
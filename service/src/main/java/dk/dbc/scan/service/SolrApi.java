@@ -19,28 +19,48 @@
 package dk.dbc.scan.service;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Inject;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.CloudHttp2SolrClient;
+import org.apache.solr.client.solrj.impl.ClusterStateProvider;
 import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.eclipse.microprofile.metrics.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 /**
  *
@@ -54,15 +74,35 @@ public class SolrApi {
     @Inject
     Config config;
 
+    @Inject
+    Hedger hedger;
+
+    @Inject
+    Coalescer coalescer;
+
+    @Inject
+    CircuitBreakers breakers;
+
+    @Inject
+    ScanAdmission admission;
+
+    @Inject
+    HitcountLimiter limiter;
+
     public SolrApi() {
     }
 
-    private SolrApi(Config config) {
+    private SolrApi(Config config, Hedger hedger, Coalescer coalescer, CircuitBreakers breakers, ScanAdmission admission, HitcountLimiter limiter) {
         this.config = config;
+        this.hedger = hedger;
+        this.coalescer = coalescer;
+        this.breakers = breakers;
+        this.admission = admission;
+        this.limiter = limiter;
     }
 
-    static SolrApi instance(Config config) {
-        return new SolrApi(config);
+    static SolrApi instance(Config config, Hedger hedger, Coalescer coalescer, CircuitBreakers breakers, ScanAdmission admission, HitcountLimiter limiter) {
+        return new SolrApi(config, hedger, coalescer, breakers, admission, limiter);
     }
 
     /**
@@ -70,19 +110,37 @@ public class SolrApi {
      *
      * @param fieldName  Name of the field
      * @param fieldValue Search string to mapTo
+     * @param timeout    Number of milliseconds the request may take, 0 for no
+     *                   limit
      * @return converted string
      * @throws SolrServerException If the SolR is down or the field-analysis
      *                             request is malformed
      * @throws IOException         If communication with the SolR fails
      */
     @Timed
-    public String normalize(String fieldName, String fieldValue) throws SolrServerException, IOException {
+    public String normalize(String fieldName, String fieldValue, long timeout) throws SolrServerException, IOException {
+        return await(coalescer.blocking("normalize|" + fieldName + "|" + fieldValue,
+                                        () -> normalizeRequest(fieldName, fieldValue, timeout)));
+    }
+
+    private String normalizeRequest(String fieldName, String fieldValue, long timeout) throws SolrServerException, IOException {
         ModifiableSolrParams req = new SolrQuery()
                 .setRequestHandler("/analysis/field")
                 .set("analysis.fieldname", fieldName)
                 .set("analysis.fieldvalue", fieldValue)
                 .set("appId", config.getAppId());
-        QueryResponse resp = config.getSolrClient().query(req);
+        QueryResponse resp;
+        CircuitBreakers.Call call = breakers.call(CircuitBreakers.NORMALIZE);
+        try {
+            resp = query(req, SolrRequest.METHOD.GET, timeout);
+            call.success();
+        } catch (TimeAllowedExceededException ex) {
+            call.abandoned();
+            throw ex;
+        } catch (SolrServerException | IOException | RuntimeException ex) {
+            call.failed(ex);
+            throw ex;
+        }
 
         return Checker.of(resp)
                 .raises(o -> {
@@ -106,21 +164,29 @@ public class SolrApi {
     }
 
     /**
-     * Get a list of terms from a given register
+     * Get a list of terms from a given register, without blocking
      *
-     * @param fieldName  Name of the field
-     * @param fieldValue Normalized search string
-     * @param cont       If the current term should be included in the result
-     * @param count      Number of terms to get
-     * @param trackingId For tracking of requests
-     * @return List of terms returned from SolR
-     * @throws SolrServerException If the SolR is down or the terms request is
-     *                             malformed
-     * @throws IOException         If communication with the SolR fails
+     * @param fieldName   Name of the field
+     * @param fieldValue  Normalized search string
+     * @param cont        If the current term should be included in the result
+     * @param count       Number of terms to get
+     * @param timeAllowed Number of milliseconds SolR may spend, and the
+     *                    request may take, 0 for no limit
+     * @param trackingId  For tracking of requests
+     * @param executor    Where to run the request, if the SolR client cannot
+     *                    do it asynchronously
+     * @return future list of terms returned from SolR
      */
-    @Timed
-    public List<String> scan(String fieldName, String fieldValue, boolean cont, int count, String trackingId) throws SolrServerException, IOException {
-        ModifiableSolrParams req = new SolrQuery()
+    public CompletableFuture<List<String>> scanAsync(String fieldName, String fieldValue, boolean cont, int count, long timeAllowed, String trackingId, Executor executor) {
+        long bucket = timeAllowedBucket(timeAllowed);
+        ModifiableSolrParams req = scanRequest(fieldName, fieldValue, cont, count, bucket, trackingId);
+        return coalescer.async("terms|" + fieldName + "|" + fieldValue + "|" + cont + "|" + count + "|" + bucket,
+                               () -> Futures.thenApply(hedgedQueryAsync(CircuitBreakers.TERMS, req, SolrRequest.METHOD.GET, timeAllowed, executor),
+                                                       resp -> unchecked(() -> terms(resp, req, fieldName))));
+    }
+
+    private ModifiableSolrParams scanRequest(String fieldName, String fieldValue, boolean cont, int count, long timeAllowed, String trackingId) {
+        return timeAllowed(new SolrQuery()
                 .setRequestHandler("/terms")
                 .set("terms.sort", "index")
                 .set("terms.fl", fieldName)
@@ -129,12 +195,16 @@ public class SolrApi {
                 .set("terms.limit", count)
                 .set("terms.raw", false)
                 .set("trackingId", trackingId)
-                .set("appId", config.getAppId());
-        QueryResponse resp = config.getSolrClient().query(req);
+                .set("appId", config.getAppId()), timeAllowed);
+    }
+
+    private static List<String> terms(QueryResponse resp, ModifiableSolrParams req, String fieldName) throws SolrServerException {
         if (resp.getStatus() != 0) {
             log.warn("Error in request (terms): {} = {}", req, resp);
             throw new SolrServerException("terms: error in request");
         }
+        if (isPartial(resp))
+            throw new TimeAllowedExceededException("terms: timeAllowed exceeded");
         List<TermsResponse.Term> terms = resp.getTermsResponse().getTerms(fieldName);
         return terms.stream()
                 .map(TermsResponse.Term::getTerm)
@@ -142,28 +212,415 @@ public class SolrApi {
     }
 
     /**
+     * Get the hitcount for a number of terms in one request, without blocking
+     * <p>
+     * Every term is a facet.query, so that all terms are counted in the same
+     * request, sharing the filterQuery
      *
      * @param fieldName   Name of the field
-     * @param fieldValue  Normalized search string (from terms)
+     * @param fieldValues Normalized search strings (from terms)
      * @param filterQuery profile restrictions
-     * @return number of hits in said profile
-     * @throws SolrServerException If the SolR is down or the select request is
-     *                             malformed
-     * @throws IOException         If communication with the SolR fails
+     * @param timeAllowed Number of milliseconds SolR may spend, and the
+     *                    request may take, 0 for no limit
+     * @param executor    Where to run the request, if the SolR client cannot
+     *                    do it asynchronously
+     * @return future map of term to number of hits in said profile
      */
-    @Timed
-    public long getHitCount(String fieldName, String fieldValue, String filterQuery) throws SolrServerException, IOException {
+    public CompletableFuture<Map<String, Long>> getHitCountsAsync(String fieldName, List<String> fieldValues, String filterQuery, long timeAllowed, Executor executor) {
+        long bucket = timeAllowedBucket(timeAllowed);
+        SolrQuery req = hitCountsRequest(fieldName, fieldValues, filterQuery, bucket);
+        // POST since the list of facet.query can be too long for an url
+        return coalescer.async("select|" + fieldName + "|" + filterQuery + "|" + bucket + "|" + String.join("\u0000", fieldValues),
+                               () -> Futures.thenApply(hedgedQueryAsync(CircuitBreakers.SELECT, req, SolrRequest.METHOD.POST, timeAllowed, executor),
+                                                       resp -> unchecked(() -> hitCounts(resp, req, fieldValues))));
+    }
+
+    private SolrQuery hitCountsRequest(String fieldName, List<String> fieldValues, String filterQuery, long timeAllowed) {
         SolrQuery req = new SolrQuery()
-                .setQuery(fieldName + ":" + ClientUtils.escapeQueryChars(fieldValue))
+                .setQuery("*:*")
                 .setFilterQueries(filterQuery)
                 .setParam("appId", config.getAppId())
-                .setRows(0);
-        QueryResponse resp = config.getSolrClient().query(req);
+                .setRows(0)
+                .setFacet(true);
+        for (int i = 0 ; i < fieldValues.size() ; i++) {
+            req.addFacetQuery("{!key=t" + i + "}" + fieldName + ":" + ClientUtils.escapeQueryChars(fieldValues.get(i)));
+        }
+        if (timeAllowed > 0)
+            req.setTimeAllowed((int) Math.min(timeAllowed, Integer.MAX_VALUE));
+        return req;
+    }
+
+    private static Map<String, Long> hitCounts(QueryResponse resp, SolrQuery req, List<String> fieldValues) throws SolrServerException {
         if (resp.getStatus() != 0) {
-            log.warn("Error in request (select): {} = {}", req, resp);
+            log.warn("Error in request (select/facet): {} = {}", req, resp);
             throw new SolrServerException("select: error in request");
         }
-        return resp.getResults().getNumFound();
+        // Counts from a request that ran out of time are too low
+        if (isPartial(resp))
+            throw new TimeAllowedExceededException("select: timeAllowed exceeded");
+        Map<String, Integer> facetQuery = resp.getFacetQuery();
+        if (facetQuery == null) {
+            log.warn("Error in response (select/facet): {}", resp);
+            throw new SolrServerException("select: malformed response");
+        }
+        HashMap<String, Long> hitCounts = new HashMap<>();
+        for (int i = 0 ; i < fieldValues.size() ; i++) {
+            Integer hitCount = facetQuery.get("t" + i);
+            if (hitCount == null)
+                throw new SolrServerException("select: missing count for: " + fieldValues.get(i));
+            hitCounts.put(fieldValues.get(i), hitCount.longValue());
+        }
+        return hitCounts;
+    }
+
+    private static ModifiableSolrParams timeAllowed(ModifiableSolrParams req, long timeAllowed) {
+        if (timeAllowed > 0)
+            req.set("timeAllowed", String.valueOf(timeAllowed));
+        return req;
+    }
+
+    /**
+     * Round timeAllowed down to one of 4 steps per power of two
+     * <p>
+     * Only calls with the same bucket are coalesced, so a caller never shares
+     * a request that has a lot less time than it asked for, or more time than
+     * any of the callers asked for.
+     *
+     * @param timeAllowed Number of milliseconds, 0 for no limit
+     * @return number of milliseconds to send to SolR, 0 for no limit
+     */
+    static long timeAllowedBucket(long timeAllowed) {
+        if (timeAllowed <= 0)
+            return 0L;
+        long step = Math.max(1L, Long.highestOneBit(timeAllowed) / 4);
+        return timeAllowed / step * step;
+    }
+
+    private static boolean isPartial(QueryResponse resp) {
+        NamedList<Object> header = resp.getResponseHeader();
+        return header != null && Boolean.TRUE.equals(header.get("partialResults"));
+    }
+
+    /**
+     * Send a query without blocking the calling thread, and send a duplicate
+     * if it is slow
+     * <p>
+     * With a cloud client the request and the duplicate go to replicas on
+     * different nodes, and if there's only one node nothing is hedged. A
+     * plain http client has only the one url, so the duplicate goes there
+     * too, and it's up to a load balancer in front of the SolRs to send it
+     * to another node.
+     * <p>
+     * The first successful answer is used, and the other request is aborted.
+     * A duplicate hitcount request takes a permit from the
+     * {@link HitcountLimiter} like any other, and isn't sent if none is free.
+     *
+     * @param kind     type of request (for latency tracking and circuit breaker)
+     * @param req      the query
+     * @param method   http method
+     * @param timeout  number of milliseconds the request may take, 0 for no
+     *                 limit
+     * @param executor where to run blocking requests
+     * @return future response
+     */
+    private CompletableFuture<QueryResponse> hedgedQueryAsync(String kind, SolrParams req, SolrRequest.METHOD method, long timeout, Executor executor) {
+        long delay = hedger.delay(kind);
+        List<String> replicas = replicas();
+        String replica = replicas.isEmpty() ? null : replicas.get(0);
+        CompletableFuture<QueryResponse> primary = timedQueryAsync(kind, req, method, timeout, replica, executor);
+        // No hedge, if it would be sent after the request has timed out
+        if (delay < 0 || timeout > 0 && delay >= timeout)
+            return primary;
+        // No hedge, if the cloud has no other node to send it to
+        if (config.getSolrClient() instanceof CloudHttp2SolrClient && replicas.size() < 2)
+            return primary;
+        String other = replicas.size() < 2 ? null : replicas.get(1);
+        boolean limited = CircuitBreakers.SELECT.equals(kind);
+        CompletableFuture<QueryResponse> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        primary.whenComplete((resp, ex) -> {
+            if (ex == null) {
+                result.complete(resp);
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        });
+        CompletableFuture.runAsync(() -> {
+            if (result.isDone())
+                return;
+            if (limited && !limiter.tryTakeHedge())
+                return;
+            if (!hedger.tryHedge()) {
+                if (limited)
+                    limiter.releaseHedge();
+                return;
+            }
+            log.debug("Hedging {} request after {}ms", kind, delay);
+            outstanding.incrementAndGet();
+            CompletableFuture<QueryResponse> hedge = timedQueryAsync(kind, req, method, timeout > 0 ? timeout - delay : 0L, other, executor);
+            hedge.whenComplete((resp, ex) -> {
+                if (limited)
+                    limiter.releaseHedge();
+                if (ex == null) {
+                    if (result.complete(resp))
+                        hedger.won();
+                } else if (outstanding.decrementAndGet() == 0) {
+                    result.completeExceptionally(ex);
+                }
+            });
+            result.whenComplete((resp, ex) -> hedge.cancel(true));
+        }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor));
+        result.whenComplete((resp, ex) -> primary.cancel(true));
+        return result;
+    }
+
+    /**
+     * Core urls of active replicas on different nodes, in random order
+     * <p>
+     * Only the cloud client knows the replicas, for a plain http client (or if
+     * the cluster state cannot be read) the list is empty
+     *
+     * @return list of urls
+     */
+    private List<String> replicas() {
+        SolrClient client = config.getSolrClient();
+        if (!( client instanceof CloudHttp2SolrClient ))
+            return List.of();
+        CloudHttp2SolrClient cloud = (CloudHttp2SolrClient) client;
+        try {
+            ClusterStateProvider state = cloud.getClusterStateProvider();
+            DocCollection collection = state.getCollection(cloud.getDefaultCollection());
+            if (collection == null)
+                return List.of();
+            Set<String> liveNodes = state.getLiveNodes();
+            // A replica per node, queries are distributed to the other shards
+            ArrayList<String> urls = new ArrayList<>(collection.getReplicas().stream()
+                    .filter(replica -> replica.isActive(liveNodes))
+                    .collect(toMap(Replica::getNodeName, Replica::getCoreUrl, (a, b) -> a))
+                    .values());
+            Collections.shuffle(urls);
+            return urls;
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Cannot get replicas from cluster state: {}", ex.getMessage());
+            log.debug("Cannot get replicas from cluster state: ", ex);
+            return List.of();
+        }
+    }
+
+    private CompletableFuture<QueryResponse> timedQueryAsync(String kind, SolrParams req, SolrRequest.METHOD method, long timeout, String replica, Executor executor) {
+        CircuitBreakers.Call call;
+        try {
+            call = breakers.call(kind);
+        } catch (CircuitBreakers.OpenException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        long before = System.nanoTime();
+        CompletableFuture<QueryResponse> future = queryAsync(req, method, timeout, replica, executor);
+        future.whenComplete((resp, ex) -> {
+            if (ex == null) {
+                call.success();
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before);
+                hedger.record(kind, millis);
+                admission.record(millis);
+            } else if (future.isCancelled()) {
+                call.abandoned(); // The loser of a hedge
+            } else if (ex instanceof TimeoutException) {
+                call.abandoned(); // The scan ran out of time, that says nothing about SolR
+            } else {
+                call.failed(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Send a query without blocking the calling thread
+     * <p>
+     * A plain http SolR client sends the request asynchronously. For the cloud
+     * client, the request is sent asynchronously to the replica by the http
+     * client the cloud client uses. The cloud client itself has no
+     * asynchronous api, so without a replica the blocking request is run on
+     * the executor, and cannot be aborted.
+     * <p>
+     * When the timeout passes the response fails with
+     * {@link TimeoutException}, and the http request is aborted.
+     *
+     * @param req      the query
+     * @param method   http method
+     * @param timeout  number of milliseconds the request may take, 0 for no
+     *                 limit
+     * @param replica  core url to send the request to (cloud client) or null
+     * @param executor where to run blocking requests
+     * @return future response
+     */
+    private CompletableFuture<QueryResponse> queryAsync(SolrParams req, SolrRequest.METHOD method, long timeout, String replica, Executor executor) {
+        SolrClient client = config.getSolrClient();
+        Http2SolrClient http = null;
+        QueryRequest request = new QueryRequest(req, method);
+        if (client instanceof Http2SolrClient) {
+            http = (Http2SolrClient) client;
+        } else if (replica != null && client instanceof CloudHttp2SolrClient) {
+            http = ((CloudHttp2SolrClient) client).getHttpClient();
+            request.setBasePath(replica);
+        }
+        CompletableFuture<QueryResponse> response;
+        if (http != null) {
+            CompletableFuture<NamedList<Object>> sent = http.requestAsync(request, null);
+            // Abort the http request, if the response is no longer wanted
+            response = Futures.thenApply(sent, resp -> new QueryResponse(resp, client));
+        } else {
+            response = CompletableFuture.supplyAsync(() -> unchecked(() -> client.query(req, method)), executor);
+        }
+        if (timeout > 0)
+            response.orTimeout(timeout, TimeUnit.MILLISECONDS);
+        return response;
+    }
+
+    /**
+     * Send a query, blocking no longer than the timeout
+     * <p>
+     * The timeout is only honored if the request can be aborted, that is for
+     * a plain http SolR client, or a cloud client that knows its replicas
+     *
+     * @param req     the query
+     * @param method  http method
+     * @param timeout number of milliseconds the request may take, 0 for no
+     *                limit
+     * @return the response
+     * @throws SolrServerException If the request fails with it, or
+     *                             {@link TimeAllowedExceededException} if the
+     *                             timeout passed
+     * @throws IOException         If communication with the SolR fails
+     */
+    private QueryResponse query(SolrParams req, SolrRequest.METHOD method, long timeout) throws SolrServerException, IOException {
+        SolrClient client = config.getSolrClient();
+        if (timeout > 0) {
+            if (client instanceof Http2SolrClient)
+                return await(queryAsync(req, method, timeout, null, null));
+            List<String> replicas = replicas();
+            if (!replicas.isEmpty())
+                return await(queryAsync(req, method, timeout, replicas.get(0), null));
+        }
+        return client.query(req, method);
+    }
+
+    /**
+     * Wait for a future, and throw what it failed with
+     *
+     * @param <T>    type of value
+     * @param future the future
+     * @return the value
+     * @throws SolrServerException If the future failed with it
+     * @throws IOException         If the future failed with it, or the thread
+     *                             was interrupted
+     */
+    private static <T> T await(CompletableFuture<T> future) throws SolrServerException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof TimeoutException)
+                throw new TimeAllowedExceededException("request timed out");
+            if (cause instanceof SolrServerException)
+                throw (SolrServerException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new SolrServerException(cause);
+        }
+    }
+
+    private static <T> T unchecked(SolrCall<T> call) {
+        try {
+            return call.call();
+        } catch (SolrServerException | IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    /**
+     * The request ran out of time, SolR stopped processing it because
+     * timeAllowed was exceeded, or the client gave up waiting for it
+     */
+    public static class TimeAllowedExceededException extends SolrServerException {
+
+        public TimeAllowedExceededException(String message) {
+            super(message);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SolrCall<T> {
+
+        T call() throws SolrServerException, IOException;
+    }
+
+    /**
+     * Get the version of the schema (in ZooKeeper)
+     * <p>
+     * This changes whenever the schema is modified, and can be used to
+     * invalidate values derived from the schema
+     *
+     * @return version number
+     * @throws SolrServerException If the SolR is down or the schema request
+     *                             is malformed
+     * @throws IOException         If communication with the SolR fails
+     */
+    public int schemaVersion() throws SolrServerException, IOException {
+        ModifiableSolrParams req = new SolrQuery()
+                .setRequestHandler("/schema/zkversion")
+                .set("appId", config.getAppId());
+        QueryResponse resp = config.getSolrClient().query(req);
+        return Checker.of(resp)
+                .raises(o -> {
+                    log.warn("Error in response (schema/zkversion): {}", o);
+                    return new SolrServerException("schema/zkversion: malformed response");
+                })
+                .ensure(o -> o.getStatus() == 0)
+                .mapTo(o -> o.getResponse().get("zkversion"))
+                .as(Integer.class)
+                .get();
+    }
+
+    /**
+     * Get the schema definition of the type of a field
+     *
+     * @param fieldName Name of the field (can be dynamic)
+     * @return the fieldType definition as returned by the schema api
+     * @throws SolrServerException If the SolR is down or the schema request
+     *                             is malformed
+     * @throws IOException         If communication with the SolR fails
+     */
+    public NamedList<Object> fieldType(String fieldName) throws SolrServerException, IOException {
+        ModifiableSolrParams fieldReq = new SolrQuery()
+                .setRequestHandler("/schema/fields/" + fieldName)
+                .set("includeDynamic", true)
+                .set("appId", config.getAppId());
+        String type = Checker.of(config.getSolrClient().query(fieldReq))
+                .raises(o -> {
+                    log.warn("Error in response (schema/fields): {}", o);
+                    return new SolrServerException("schema/fields: malformed response");
+                })
+                .ensure(o -> o.getStatus() == 0)
+                .mapTo(o -> o.getResponse().findRecursive("field", "type"))
+                .as(String.class)
+                .get();
+        ModifiableSolrParams typeReq = new SolrQuery()
+                .setRequestHandler("/schema/fieldtypes/" + type)
+                .set("appId", config.getAppId());
+        return Checker.of(config.getSolrClient().query(typeReq))
+                .raises(o -> {
+                    log.warn("Error in response (schema/fieldtypes): {}", o);
+                    return new SolrServerException("schema/fieldtypes: malformed response");
+                })
+                .ensure(o -> o.getStatus() == 0)
+                .mapTo(o -> o.getResponse().get("fieldType"))
+                .as(NamedList.class)
+                .get();
     }
 
     private static final Pattern ZK = Pattern.compile("zk://([^/]*)(/.*)?/([^/]*)");
@@ -20,6 +20,7 @@ package dk.dbc.scan.service;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.IOException;
+import java.util.Map;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
@@ -44,6 +45,15 @@ public class StatusBean {
     @Inject
     Config config;
 
+    @Inject
+    OverFetch overFetch;
+
+    @Inject
+    CircuitBreakers breakers;
+
+    @Inject
+    HitcountLimiter limiter;
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Status getStatus() {
@@ -58,6 +68,27 @@ public class StatusBean {
         }
     }
 
+    @GET
+    @Path("overfetch")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, OverFetch.Learned> getOverFetch() {
+        return overFetch.learned();
+    }
+
+    @GET
+    @Path("breakers")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, CircuitBreakers.Status> getBreakers() {
+        return breakers.status();
+    }
+
+    @GET
+    @Path("agencies")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, HitcountLimiter.AgencyQueue> getAgencies() {
+        return limiter.agencies();
+    }
+
     @SuppressFBWarnings()
     public static class Status {
 
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletionException;
+import jakarta.ws.rs.ClientErrorException;
+import org.apache.solr.common.SolrException;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class CircuitBreakersTest {
+
+    @Test(timeout = 2_000L)
+    public void testOpensOnFailures() throws Exception {
+        System.out.println("testOpensOnFailures");
+        CircuitBreakers breakers = CircuitBreakers.instance(config("CIRCUIT_OPEN_TIME=60000"));
+        for (int i = 0 ; i < 5 ; i++) {
+            breakers.call("select").success();
+        }
+        for (int i = 0 ; i < 4 ; i++) {
+            breakers.call("select").failure();
+        }
+        assertThat(breakers.getSelectState(), is(CircuitBreakers.State.CLOSED.ordinal()));
+        breakers.call("select").failure();
+        assertThat(breakers.getSelectState(), is(CircuitBreakers.State.OPEN.ordinal()));
+        assertThat(rejected(breakers, "select"), is(true));
+        assertThat(rejected(breakers, "terms"), is(false));
+        assertThat(breakers.getRejected(), is(1L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testHalfOpenProbe() throws Exception {
+        System.out.println("testHalfOpenProbe");
+        CircuitBreakers breakers = CircuitBreakers.instance(config("CIRCUIT_OPEN_TIME=0"));
+        for (int i = 0 ; i < 10 ; i++) {
+            breakers.call("terms").failure();
+        }
+        assertThat(breakers.getTermsState(), is(CircuitBreakers.State.OPEN.ordinal()));
+
+        // One probe at a time, a failed probe opens the breaker again
+        CircuitBreakers.Call probe = breakers.call("terms");
+        assertThat(breakers.getTermsState(), is(CircuitBreakers.State.HALF_OPEN.ordinal()));
+        assertThat(rejected(breakers, "terms"), is(true));
+        probe.failure();
+        assertThat(breakers.getTermsState(), is(CircuitBreakers.State.OPEN.ordinal()));
+
+        // An abandoned probe gives room for another
+        breakers.call("terms").abandoned();
+        breakers.call("terms").success();
+        assertThat(breakers.getTermsState(), is(CircuitBreakers.State.CLOSED.ordinal()));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testDisabled() throws Exception {
+        System.out.println("testDisabled");
+        CircuitBreakers breakers = CircuitBreakers.instance(config("CIRCUIT_FAILURE_PERCENT=0"));
+        for (int i = 0 ; i < 20 ; i++) {
+            breakers.call("select").failure();
+        }
+        assertThat(rejected(breakers, "select"), is(false));
+        assertThat(breakers.status().isEmpty(), is(true));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testClientErrorsDoNotOpen() throws Exception {
+        System.out.println("testClientErrorsDoNotOpen");
+        CircuitBreakers breakers = CircuitBreakers.instance(config("CIRCUIT_OPEN_TIME=60000"));
+        for (int i = 0 ; i < 10 ; i++) {
+            breakers.call("select").failed(new CompletionException(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "undefined field")));
+            breakers.call("profile").failed(new ClientErrorException(404));
+        }
+        assertThat(breakers.getSelectState(), is(CircuitBreakers.State.CLOSED.ordinal()));
+        assertThat(rejected(breakers, "select"), is(false));
+        assertThat(rejected(breakers, "profile"), is(false));
+
+        for (int i = 0 ; i < 5 ; i++) {
+            breakers.call("select").failed(new CompletionException(new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "no replicas")));
+        }
+        assertThat(breakers.getSelectState(), is(CircuitBreakers.State.OPEN.ordinal()));
+    }
+
+    private static boolean rejected(CircuitBreakers breakers, String name) {
+        try {
+            breakers.call(name).abandoned();
+            return false;
+        } catch (CircuitBreakers.OpenException ex) {
+            return true;
+        }
+    }
+
+    private static Config config(String... extra) {
+        ArrayList<String> env = new ArrayList<>(asList(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api",
+                "CIRCUIT_WINDOW=10",
+                "CIRCUIT_MIN_CALLS=10"));
+        env.addAll(asList(extra));
+        Config config = new Config(env.toArray(String[]::new));
+        config.init();
+        return config;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class CoalescerTest {
+
+    @Test(timeout = 2_000L)
+    public void testIdenticalCallsShareResult() throws Exception {
+        System.out.println("testIdenticalCallsShareResult");
+        Coalescer coalescer = Coalescer.instance();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> solr = new CompletableFuture<>();
+
+        CompletableFuture<String> first = coalescer.async("a", () -> {
+            calls.incrementAndGet();
+            return solr;
+        });
+        CompletableFuture<String> second = coalescer.async("a", () -> {
+            calls.incrementAndGet();
+            return solr;
+        });
+        CompletableFuture<String> other = coalescer.async("b", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        second.cancel(true);
+        solr.complete("value");
+
+        assertThat(first.get(), is("value"));
+        assertThat(other.get(), is("other"));
+        assertThat(calls.get(), is(2));
+        assertThat(coalescer.getCoalesced(), is(1L));
+        assertThat(coalescer.getInFlight(), is(0));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testCallIsCancelledWhenAllCallersCancel() throws Exception {
+        System.out.println("testCallIsCancelledWhenAllCallersCancel");
+        Coalescer coalescer = Coalescer.instance();
+        CompletableFuture<String> solr = new CompletableFuture<>();
+
+        CompletableFuture<String> first = coalescer.async("a", () -> solr);
+        CompletableFuture<String> second = coalescer.async("a", () -> solr);
+        first.cancel(true);
+        assertThat(solr.isCancelled(), is(false));
+        second.cancel(true);
+        assertThat(solr.isCancelled(), is(true));
+        assertThat(coalescer.getInFlight(), is(0));
+
+        // A new caller makes a new call
+        assertThat(coalescer.async("a", () -> CompletableFuture.completedFuture("new")).get(), is("new"));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testCompletedCallIsNotReused() throws Exception {
+        System.out.println("testCompletedCallIsNotReused");
+        Coalescer coalescer = Coalescer.instance();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThat(coalescer.blocking("a", calls::incrementAndGet).get(), is(1));
+        assertThat(coalescer.blocking("a", calls::incrementAndGet).get(), is(2));
+        assertThat(coalescer.getCoalesced(), is(0L));
+    }
+}
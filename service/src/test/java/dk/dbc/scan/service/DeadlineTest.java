@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class DeadlineTest {
+
+    @Test(timeout = 2_000L)
+    public void testRemaining() throws Exception {
+        System.out.println("testRemaining");
+        Deadline deadline = Deadline.in(60_000);
+        assertThat(deadline.expired(), is(false));
+        assertThat(deadline.remaining() > 59_000, is(true));
+        assertThat(deadline.remaining() <= 60_000, is(true));
+
+        Deadline passed = Deadline.in(-10);
+        assertThat(passed.expired(), is(true));
+        assertThat(passed.remaining(), is(0L));
+        assertThat(passed.timeout(), is(1L)); // 0 would be no limit
+    }
+
+    @Test(timeout = 2_000L)
+    public void testBound() throws Exception {
+        System.out.println("testBound");
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> bound = Deadline.in(60_000).bound(future);
+        future.complete("value");
+        assertThat(bound.get(), is("value"));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testBoundTimesOut() throws Exception {
+        System.out.println("testBoundTimesOut");
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> bound = Deadline.in(10).bound(future);
+        try {
+            bound.get();
+            throw new AssertionError("Expected timeout");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
+        }
+        // The future itself is left running
+        assertThat(future.isDone(), is(false));
+    }
+}
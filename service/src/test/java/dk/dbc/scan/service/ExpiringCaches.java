@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ExpiryPolicy;
+
+/**
+ * In-memory caches for tests
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+final class ExpiringCaches {
+
+    private ExpiringCaches() {
+    }
+
+    /**
+     * A CacheManager, that expires entries like JCache does, by a clock that
+     * is set by the test
+     *
+     * @param now the clock in milliseconds
+     * @return cache manager
+     */
+    static CacheManager cacheManager(AtomicLong now) {
+        HashMap<String, Cache<?, ?>> caches = new HashMap<>();
+        return (CacheManager) Proxy.newProxyInstance(
+                CacheManager.class.getClassLoader(), new Class<?>[] {CacheManager.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getCache":
+                            return caches.get((String) args[0]);
+                        case "createCache":
+                            ExpiryPolicy expiry = ((CompleteConfiguration<?, ?>) args[1]).getExpiryPolicyFactory().create();
+                            Cache<?, ?> cache = cache(now, expiry);
+                            caches.put((String) args[0], cache);
+                            return cache;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static Cache<?, ?> cache(AtomicLong now, ExpiryPolicy expiry) {
+        HashMap<Object, Object> values = new HashMap<>();
+        HashMap<Object, Long> expires = new HashMap<>();
+        return (Cache<?, ?>) Proxy.newProxyInstance(
+                Cache.class.getClassLoader(), new Class<?>[] {Cache.class},
+                (proxy, method, args) -> {
+                    synchronized (values) {
+                        Object key = args == null ? null : args[0];
+                        switch (method.getName()) {
+                            case "get":
+                                return get(values, expires, key, expiry, now);
+                            case "getAll":
+                                HashMap<Object, Object> found = new HashMap<>();
+                                for (Object k : (Set<?>) key) {
+                                    Object value = get(values, expires, k, expiry, now);
+                                    if (value != null)
+                                        found.put(k, value);
+                                }
+                                return found;
+                            case "put":
+                                put(values, expires, key, args[1], expiry, now);
+                                return null;
+                            case "putAll":
+                                ((Map<?, ?>) key).forEach((k, v) -> put(values, expires, k, v, expiry, now));
+                                return null;
+                            case "remove":
+                                evict(values, expires, key, now);
+                                expires.remove(key);
+                                return values.remove(key) != null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+                });
+    }
+
+    private static Object get(HashMap<Object, Object> values, HashMap<Object, Long> expires, Object key, ExpiryPolicy expiry, AtomicLong now) {
+        evict(values, expires, key, now);
+        if (values.containsKey(key))
+            expire(expires, key, expiry.getExpiryForAccess(), now);
+        return values.get(key);
+    }
+
+    private static void put(HashMap<Object, Object> values, HashMap<Object, Long> expires, Object key, Object value, ExpiryPolicy expiry, AtomicLong now) {
+        evict(values, expires, key, now);
+        expire(expires, key, values.containsKey(key) ? expiry.getExpiryForUpdate() : expiry.getExpiryForCreation(), now);
+        values.put(key, value);
+    }
+
+    private static void evict(HashMap<Object, Object> values, HashMap<Object, Long> expires, Object key, AtomicLong now) {
+        if (expires.getOrDefault(key, Long.MAX_VALUE) <= now.get()) {
+            values.remove(key);
+            expires.remove(key);
+        }
+    }
+
+    private static void expire(HashMap<Object, Long> expires, Object key, Duration duration, AtomicLong now) {
+        if (duration != null)
+            expires.put(key, duration.getAdjustedTime(now.get()));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.List;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class FilterQueriesTest {
+
+    @Test(timeout = 2_000L)
+    public void testSortAndDedupe() throws Exception {
+        System.out.println("testSortAndDedupe");
+        assertThat(FilterQueries.canonical(" rec.collectionIdentifier:\"777777-katalog\"   OR rec.collectionIdentifier:\"123456-katalog\" || rec.collectionIdentifier:\"777777-katalog\""),
+                   is("rec.collectionIdentifier:\"123456-katalog\" OR rec.collectionIdentifier:\"777777-katalog\""));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testGroupsAreClauses() throws Exception {
+        System.out.println("testGroupsAreClauses");
+        assertThat(FilterQueries.canonical("b:(x AND y) OR a:\"p OR q\" OR c:\\ z"),
+                   is("a:\"p OR q\" OR b:(x AND y) OR c:\\ z"));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testNotDisjunctionIsUnchanged() throws Exception {
+        System.out.println("testNotDisjunctionIsUnchanged");
+        assertThat(FilterQueries.canonical(" b AND a "), is("b AND a"));
+        assertThat(FilterQueries.canonical("b a"), is("b a"));
+        assertThat(FilterQueries.canonical("b OR NOT a"), is("b OR NOT a"));
+        assertThat(FilterQueries.canonical("b OR a OR"), is("b OR a OR"));
+        assertThat(FilterQueries.canonical("{!terms f=rec.collectionIdentifier}b,a"), is("{!terms f=rec.collectionIdentifier}b,a"));
+        assertThat(FilterQueries.canonical("b:\"x OR a"), is("b:\"x OR a"));
+        assertThat(FilterQueries.canonical("b:(x OR a"), is("b:(x OR a"));
+        assertThat(FilterQueries.canonical(null), nullValue());
+    }
+
+    @Test(timeout = 2_000L)
+    public void testTerms() throws Exception {
+        System.out.println("testTerms");
+        assertThat(FilterQueries.terms("rec.collectionIdentifier:\"777777-katalog\" OR rec.collectionIdentifier:123456-katalog",
+                                       List.of("123456-katalog", "777777-katalog")),
+                   is("{!terms f=rec.collectionIdentifier}123456-katalog,777777-katalog"));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testTermsFallback() throws Exception {
+        System.out.println("testTermsFallback");
+        // Other fields
+        assertThat(FilterQueries.terms("rec.collectionIdentifier:\"a\" OR rec.holdingsAgencyId:123456", List.of("a")), nullValue());
+        // Not the collection identifiers of the profile
+        assertThat(FilterQueries.terms("rec.collectionIdentifier:\"a\" OR rec.collectionIdentifier:\"b\"", List.of("a")), nullValue());
+        // Separator in value
+        assertThat(FilterQueries.terms("rec.collectionIdentifier:\"a,b\"", List.of("a,b")), nullValue());
+        // Not a disjunction
+        assertThat(FilterQueries.terms("rec.collectionIdentifier:\"a\" AND rec.collectionIdentifier:\"b\"", List.of("a", "b")), nullValue());
+        assertThat(FilterQueries.terms("rec.collectionIdentifier:\"a\"", List.of()), nullValue());
+    }
+
+    @Test(timeout = 2_000L)
+    public void testFingerprint() throws Exception {
+        System.out.println("testFingerprint");
+        String fingerprint = FilterQueries.fingerprint("rec.collectionIdentifier:\"777777-katalog\"");
+        assertThat(fingerprint.length(), is(32));
+        assertThat(FilterQueries.fingerprint("rec.collectionIdentifier:\"777777-katalog\""), is(fingerprint));
+        assertThat(FilterQueries.fingerprint("rec.collectionIdentifier:\"123456-katalog\""), not(fingerprint));
+        assertThat(FilterQueries.fingerprint("a OR b"), is(FilterQueries.fingerprint("b OR a")));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testFingerprintOfDisjunction() throws Exception {
+        System.out.println("testFingerprintOfDisjunction");
+        String fingerprint = FilterQueries.fingerprint("rec.collectionIdentifier:\"777777-katalog\" OR rec.collectionIdentifier:\"123456-katalog\"");
+        assertThat(FilterQueries.fingerprint("rec.collectionIdentifier:\"123456-katalog\" OR rec.collectionIdentifier:\"777777-katalog\""), is(fingerprint));
+        assertThat(FilterQueries.fingerprint("rec.collectionIdentifier:\"123456-katalog\" || rec.collectionIdentifier:\"777777-katalog\" OR rec.collectionIdentifier:\"123456-katalog\""), is(fingerprint));
+        assertThat(FilterQueries.fingerprint("rec.collectionIdentifier:\"123456-katalog\" OR rec.collectionIdentifier:\"870970-basis\""), not(fingerprint));
+        assertThat(FilterQueries.fingerprint("rec.collectionIdentifier:\"123456-katalog\" AND rec.collectionIdentifier:\"777777-katalog\""), not(fingerprint));
+    }
+}
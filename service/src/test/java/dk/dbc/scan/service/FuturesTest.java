@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class FuturesTest {
+
+    @Test(timeout = 2_000L)
+    public void testCancelIsPassedOn() throws Exception {
+        System.out.println("testCancelIsPassedOn");
+        CompletableFuture<Integer> request = new CompletableFuture<>();
+        CompletableFuture<String> response = Futures.thenApply(request, String::valueOf);
+        response.cancel(true);
+        assertThat(request.isCancelled(), is(true));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testTimeoutIsPassedOn() throws Exception {
+        System.out.println("testTimeoutIsPassedOn");
+        CompletableFuture<Integer> request = new CompletableFuture<>();
+        CompletableFuture<String> response = Futures.thenApply(request, String::valueOf);
+        response.orTimeout(10, TimeUnit.MILLISECONDS);
+        while (!request.isDone()) {
+            Thread.sleep(1);
+        }
+        assertThat(request.isCancelled(), is(true));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testCompletedIsUntouched() throws Exception {
+        System.out.println("testCompletedIsUntouched");
+        CompletableFuture<Integer> request = new CompletableFuture<>();
+        CompletableFuture<String> response = Futures.thenApply(request, String::valueOf);
+        request.complete(1);
+        assertThat(response.get(), is("1"));
+        assertThat(request.isCancelled(), is(false));
+    }
+}
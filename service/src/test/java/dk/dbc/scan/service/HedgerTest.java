@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class HedgerTest {
+
+    private static Hedger hedger(String percentile) {
+        Config config = new Config(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api",
+                "HEDGE_PERCENTILE=" + percentile,
+                "HEDGE_MIN_DELAY=5",
+                "HEDGE_MAX_PERCENT=50",
+                "HEDGE_WINDOW=100"
+        );
+        config.init();
+        return Hedger.instance(config);
+    }
+
+    @Test(timeout = 2_000L)
+    public void testDisabled() throws Exception {
+        System.out.println("testDisabled");
+        Hedger hedger = hedger("0");
+        for (int i = 0 ; i < 100 ; i++) {
+            hedger.record("select", 10);
+        }
+        assertThat(hedger.delay("select"), is(-1L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testPercentile() throws Exception {
+        System.out.println("testPercentile");
+        Hedger hedger = hedger("90");
+        assertThat(hedger.delay("select"), is(-1L));
+        for (int i = 1 ; i <= 100 ; i++) {
+            hedger.record("select", i);
+        }
+        assertThat(hedger.delay("select"), is(90L));
+        assertThat(hedger.delay("terms"), is(-1L));
+        for (int i = 0 ; i < 100 ; i++) {
+            hedger.record("terms", 1);
+        }
+        assertThat(hedger.delay("terms"), is(5L)); // HEDGE_MIN_DELAY
+    }
+
+    @Test(timeout = 2_000L)
+    public void testRateCap() throws Exception {
+        System.out.println("testRateCap");
+        Hedger hedger = hedger("90");
+        hedger.delay("select");
+        assertThat(hedger.tryHedge(), is(false));
+        hedger.delay("select");
+        assertThat(hedger.tryHedge(), is(true));
+        assertThat(hedger.tryHedge(), is(false));
+        assertThat(hedger.getFired(), is(1L));
+        assertThat(hedger.getCapped(), is(2L));
+    }
+}
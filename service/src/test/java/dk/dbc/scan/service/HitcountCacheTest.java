@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+import static java.util.stream.Collectors.toMap;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class HitcountCacheTest {
+
+    private final List<List<String>> loaded = new ArrayList<>();
+
+    @Test(timeout = 2_000L)
+    public void testDisabledCacheLoadsAll() throws Exception {
+        System.out.println("testDisabledCacheLoadsAll");
+        HitcountCache cache = HitcountCache.instance(null, null);
+        Map<String, Long> hitCounts = cache.getHitCountsAsync("reg", List.of("a", "b"), "fq", terms -> CompletableFuture.completedFuture(terms.stream()
+                                                              .collect(toMap(t -> t, t -> 1L)))).get();
+        assertThat(hitCounts, is(Map.of("a", 1L, "b", 1L)));
+        assertThat(cache.getHits(), is(0L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testHitSkipsSolr() throws Exception {
+        System.out.println("testHitSkipsSolr");
+        HitcountCache cache = cache();
+        assertThat(cache.getHitCountsAsync("reg", List.of("a", "b"), "fq", this::load).get(), is(Map.of("a", 1L, "b", 1L)));
+        assertThat(cache.getHitCountsAsync("reg", List.of("a", "b"), "fq", this::load).get(), is(Map.of("a", 1L, "b", 1L)));
+        assertThat(loaded, is(List.of(List.of("a", "b"))));
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testOnlyMissingAreLoaded() throws Exception {
+        System.out.println("testOnlyMissingAreLoaded");
+        HitcountCache cache = cache();
+        cache.getHitCountsAsync("reg", List.of("b"), "fq", this::load).get();
+        assertThat(cache.getHitCountsAsync("reg", List.of("a", "b", "c"), "fq", this::load).get(), is(Map.of("a", 1L, "b", 1L, "c", 1L)));
+        assertThat(loaded, is(List.of(List.of("b"), List.of("a", "c"))));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(3L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testKeyedByRegisterAndFilterQuery() throws Exception {
+        System.out.println("testKeyedByRegisterAndFilterQuery");
+        HitcountCache cache = cache();
+        cache.getHitCountsAsync("reg", List.of("a"), "x OR y", this::load).get();
+        cache.getHitCountsAsync("other", List.of("a"), "x OR y", this::load).get();
+        cache.getHitCountsAsync("reg", List.of("a"), "x OR z", this::load).get();
+        assertThat(loaded.size(), is(3));
+        // Same canonical filter query
+        cache.getHitCountsAsync("reg", List.of("a"), "y OR x", this::load).get();
+        assertThat(loaded.size(), is(3));
+        assertThat(cache.getHits(), is(1L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testCancelIsPassedToLoader() throws Exception {
+        System.out.println("testCancelIsPassedToLoader");
+        HitcountCache cache = cache();
+        CompletableFuture<Map<String, Long>> request = new CompletableFuture<>();
+        cache.getHitCountsAsync("reg", List.of("a"), "fq", terms -> request).cancel(true);
+        assertThat(request.isCancelled(), is(true));
+
+        // Nothing was stored
+        cache.getHitCountsAsync("reg", List.of("a"), "fq", this::load).get();
+        assertThat(loaded, is(List.of(List.of("a"))));
+    }
+
+    private CompletableFuture<Map<String, Long>> load(List<String> terms) {
+        loaded.add(terms);
+        return CompletableFuture.completedFuture(terms.stream()
+                .collect(toMap(t -> t, t -> 1L)));
+    }
+
+    private static HitcountCache cache() {
+        Config config = new Config("SOLR_URL=http://localhost/solr/corepo",
+                                   "SOLR_APPID=test",
+                                   "VIPCORE_ENDPOINT=http://localhost/vipcore/api");
+        config.init();
+        return HitcountCache.instance(config, ExpiringCaches.cacheManager(new AtomicLong()));
+    }
+}
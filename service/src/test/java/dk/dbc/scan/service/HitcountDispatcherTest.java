@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class HitcountDispatcherTest {
+
+    @Test(timeout = 2_000L)
+    public void testLookupsAreMerged() throws Exception {
+        System.out.println("testLookupsAreMerged");
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        HitcountDispatcher dispatcher = HitcountDispatcher.instance(config("HITCOUNT_DISPATCH_WINDOW=50"), solr(requests));
+
+        CompletableFuture<Map<String, Long>> first = dispatcher.getHitCounts("register", asList("a", "b"), "fq", 0L, ForkJoinPool.commonPool());
+        CompletableFuture<Map<String, Long>> second = dispatcher.getHitCounts("register", asList("b", "c"), "fq", 0L, ForkJoinPool.commonPool());
+        CompletableFuture<Map<String, Long>> other = dispatcher.getHitCounts("register", asList("a"), "other", 0L, ForkJoinPool.commonPool());
+
+        assertThat(first.get(), is(Map.of("a", 1L, "b", 1L)));
+        assertThat(second.get(), is(Map.of("b", 1L, "c", 1L)));
+        assertThat(other.get(), is(Map.of("a", 1L)));
+        assertThat(requests.size(), is(2));
+        assertThat(requests.contains(asList("a", "b", "c")), is(true));
+        assertThat(dispatcher.getLookups(), is(3L));
+        assertThat(dispatcher.getRequests(), is(2L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testFullBatchIsSentAtOnce() throws Exception {
+        System.out.println("testFullBatchIsSentAtOnce");
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        HitcountDispatcher dispatcher = HitcountDispatcher.instance(config("HITCOUNT_DISPATCH_WINDOW=60000", "HITCOUNT_DISPATCH_MAX=3"), solr(requests));
+
+        CompletableFuture<Map<String, Long>> first = dispatcher.getHitCounts("register", asList("a", "b"), "fq", 0L, ForkJoinPool.commonPool());
+        CompletableFuture<Map<String, Long>> second = dispatcher.getHitCounts("register", asList("c"), "fq", 0L, ForkJoinPool.commonPool());
+
+        assertThat(first.get(), is(Map.of("a", 1L, "b", 1L)));
+        assertThat(second.get(), is(Map.of("c", 1L)));
+        assertThat(requests, is(asList(asList("a", "b", "c"))));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testMaxIsNotExceeded() throws Exception {
+        System.out.println("testMaxIsNotExceeded");
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        HitcountDispatcher dispatcher = HitcountDispatcher.instance(config("HITCOUNT_DISPATCH_WINDOW=60000", "HITCOUNT_DISPATCH_MAX=4"), solr(requests));
+
+        CompletableFuture<Map<String, Long>> first = dispatcher.getHitCounts("register", asList("a", "b", "c"), "fq", 0L, ForkJoinPool.commonPool());
+        assertThat(requests.size(), is(0));
+        // Would make 5 terms, so the first is sent alone
+        CompletableFuture<Map<String, Long>> second = dispatcher.getHitCounts("register", asList("c", "d", "e"), "fq", 0L, ForkJoinPool.commonPool());
+        assertThat(first.get(), is(Map.of("a", 1L, "b", 1L, "c", 1L)));
+        assertThat(second.isDone(), is(false));
+        // Terms already pending don't count
+        CompletableFuture<Map<String, Long>> third = dispatcher.getHitCounts("register", asList("d", "f"), "fq", 0L, ForkJoinPool.commonPool());
+
+        assertThat(second.get(), is(Map.of("c", 1L, "d", 1L, "e", 1L)));
+        assertThat(third.get(), is(Map.of("d", 1L, "f", 1L)));
+        assertThat(requests, is(asList(asList("a", "b", "c"), asList("c", "d", "e", "f"))));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testCancelledLookupsAreNotSent() throws Exception {
+        System.out.println("testCancelledLookupsAreNotSent");
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        HitcountDispatcher dispatcher = HitcountDispatcher.instance(config("HITCOUNT_DISPATCH_WINDOW=10"), solr(requests));
+
+        dispatcher.getHitCounts("register", asList("a"), "fq", 0L, ForkJoinPool.commonPool()).cancel(true);
+        dispatcher.getHitCounts("register", asList("b"), "fq", 0L, ForkJoinPool.commonPool()).cancel(true);
+        Thread.sleep(100);
+
+        assertThat(requests.size(), is(0));
+        assertThat(dispatcher.getRequests(), is(0L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testRequestIsCancelledWithItsLookups() throws Exception {
+        System.out.println("testRequestIsCancelledWithItsLookups");
+        CompletableFuture<Map<String, Long>> request = new CompletableFuture<>();
+        HitcountDispatcher dispatcher = HitcountDispatcher.instance(config("HITCOUNT_DISPATCH_WINDOW=60000", "HITCOUNT_DISPATCH_MAX=2"), new SolrApi() {
+            @Override
+            public CompletableFuture<Map<String, Long>> getHitCountsAsync(String fieldName, List<String> fieldValues, String filterQuery, long timeAllowed, Executor executor) {
+                return request;
+            }
+        });
+
+        CompletableFuture<Map<String, Long>> first = dispatcher.getHitCounts("register", asList("a"), "fq", 0L, ForkJoinPool.commonPool());
+        CompletableFuture<Map<String, Long>> second = dispatcher.getHitCounts("register", asList("b"), "fq", 0L, ForkJoinPool.commonPool());
+        assertThat(dispatcher.getRequests(), is(1L));
+        first.cancel(true);
+        assertThat(request.isCancelled(), is(false));
+        second.cancel(true);
+        assertThat(request.isCancelled(), is(true));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testDisabledSendsDirectly() throws Exception {
+        System.out.println("testDisabledSendsDirectly");
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        HitcountDispatcher dispatcher = HitcountDispatcher.instance(config(), solr(requests));
+
+        dispatcher.getHitCounts("register", asList("a"), "fq", 0L, ForkJoinPool.commonPool()).get();
+        dispatcher.getHitCounts("register", asList("b"), "fq", 0L, ForkJoinPool.commonPool()).get();
+        assertThat(requests.size(), is(2));
+    }
+
+    private static Config config(String... extra) {
+        ArrayList<String> env = new ArrayList<>(asList(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api"));
+        env.addAll(asList(extra));
+        Config config = new Config(env.toArray(String[]::new));
+        config.init();
+        return config;
+    }
+
+    private static SolrApi solr(List<List<String>> requests) {
+        return new SolrApi() {
+            @Override
+            public CompletableFuture<Map<String, Long>> getHitCountsAsync(String fieldName, List<String> fieldValues, String filterQuery, long timeAllowed, Executor executor) {
+                requests.add(fieldValues);
+                HashMap<String, Long> hitCounts = new HashMap<>();
+                fieldValues.forEach(value -> hitCounts.put(value, 1L));
+                return CompletableFuture.completedFuture(hitCounts);
+            }
+        };
+    }
+}
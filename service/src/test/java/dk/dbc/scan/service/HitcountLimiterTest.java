@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class HitcountLimiterTest {
+
+    @Test(timeout = 2_000L)
+    public void testAgenciesAreServedInTurn() throws Exception {
+        System.out.println("testAgenciesAreServedInTurn");
+        HitcountLimiter limiter = HitcountLimiter.instance(config("HITCOUNT_AGENCY_MAX=2"));
+        HitcountLimiter.RequestLimit big = limiter.forRequest("A");
+        assertThat(big.tryAcquire(), is(true));
+        assertThat(big.tryAcquire(), is(true));
+
+        CompletableFuture<Boolean> first = acquire(limiter.forRequest("A"));
+        waitFor(limiter, 1);
+        CompletableFuture<Boolean> second = acquire(limiter.forRequest("A"));
+        waitFor(limiter, 2);
+        CompletableFuture<Boolean> small = acquire(limiter.forRequest("B"));
+        waitFor(limiter, 3);
+
+        big.release();
+        assertThat(first.get(), is(true));
+        big.release();
+        assertThat(small.get(), is(true)); // before the second from A
+        assertThat(second.isDone(), is(false));
+        assertThat(limiter.agencies().get("A").waiting, is(1));
+        assertThat(limiter.agencies().get("B").waits, is(1L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testAgencyMax() throws Exception {
+        System.out.println("testAgencyMax");
+        HitcountLimiter limiter = HitcountLimiter.instance(config("HITCOUNT_AGENCY_MAX=1"));
+        assertThat(limiter.forRequest("A").tryAcquire(), is(true));
+        assertThat(limiter.forRequest("A").tryAcquire(), is(false));
+        assertThat(limiter.forRequest("A").acquireAsync(Deadline.in(10)).get(), is(false));
+        assertThat(limiter.forRequest("B").tryAcquire(), is(true));
+        assertThat(limiter.getPermitsInUse(), is(2));
+        assertThat(limiter.getPermitsWaiting(), is(0));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testHedgesTakePermits() throws Exception {
+        System.out.println("testHedgesTakePermits");
+        HitcountLimiter limiter = HitcountLimiter.instance(config("HITCOUNT_AGENCY_MAX=2"));
+        assertThat(limiter.tryTakeHedge(), is(true));
+        assertThat(limiter.forRequest("A").tryAcquire(), is(true));
+        assertThat(limiter.tryTakeHedge(), is(false)); // Pool is used
+
+        // A hedge doesn't take a permit a scan is waiting for
+        CompletableFuture<Boolean> waiting = acquire(limiter.forRequest("B"));
+        waitFor(limiter, 1);
+        limiter.releaseHedge();
+        assertThat(waiting.get(), is(true));
+        assertThat(limiter.tryTakeHedge(), is(false));
+        assertThat(limiter.getPermitsInUse(), is(2));
+    }
+
+    private static CompletableFuture<Boolean> acquire(HitcountLimiter.RequestLimit limit) {
+        return limit.acquireAsync(Deadline.in(10_000));
+    }
+
+    private static void waitFor(HitcountLimiter limiter, int waiting) throws InterruptedException {
+        while (limiter.getPermitsWaiting() != waiting) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static Config config(String agencyMax) {
+        Config config = new Config("SOLR_URL=http://localhost/solr/corepo",
+                                   "SOLR_APPID=test",
+                                   "VIPCORE_ENDPOINT=http://localhost/vipcore/api",
+                                   "PARALLEL_HITCOUNT_REQUESTS=2",
+                                   "PARALLEL_HITCOUNT_REQUESTS_TOTAL=2",
+                                   agencyMax);
+        config.init();
+        return config;
+    }
+}
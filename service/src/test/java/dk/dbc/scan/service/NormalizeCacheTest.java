@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class NormalizeCacheTest {
+
+    @Test(timeout = 2_000L)
+    public void testKeyedByRegisterAndTerm() throws Exception {
+        System.out.println("testKeyedByRegisterAndTerm");
+        Config config = config();
+        AtomicInteger loads = new AtomicInteger();
+        NormalizeCache normalizeCache = NormalizeCache.instance(config, null, ExpiringCaches.cacheManager(new AtomicLong()), null);
+
+        assertThat(normalizeCache.normalize("scan.lti", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo1"));
+        assertThat(normalizeCache.normalize("scan.lti", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo1"));
+        assertThat(normalizeCache.normalize("scan.lfo", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo2"));
+        assertThat(normalizeCache.normalize("scan.lti", "foo", () -> "foo" + loads.incrementAndGet()), is("foo3"));
+        assertThat(normalizeCache.getHits(), is(1L));
+        assertThat(normalizeCache.getMisses(), is(3L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testSchemaChangeInvalidates() throws Exception {
+        System.out.println("testSchemaChangeInvalidates");
+        Config config = config("NORMALIZE_CACHE_SCHEMA_CHECK=3600");
+        AtomicInteger version = new AtomicInteger(7);
+        AtomicInteger loads = new AtomicInteger();
+        ScanExecutor executor = ScanExecutor.instance(config, null);
+        try {
+            NormalizeCache normalizeCache = NormalizeCache.instance(config, solr(version), ExpiringCaches.cacheManager(new AtomicLong()), executor);
+            while (normalizeCache.getSchemaVersion() != 7) { // The first check is in the background
+                Thread.sleep(5L);
+            }
+            assertThat(normalizeCache.normalize("scan.lti", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo1"));
+            assertThat(normalizeCache.normalize("scan.lti", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo1"));
+
+            // Unchanged
+            normalizeCache.checkSchemaVersion();
+            assertThat(normalizeCache.normalize("scan.lti", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo1"));
+            assertThat(normalizeCache.getInvalidations(), is(0L));
+
+            version.set(8);
+            normalizeCache.checkSchemaVersion();
+            assertThat(normalizeCache.getInvalidations(), is(1L));
+            assertThat(normalizeCache.normalize("scan.lti", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo2"));
+            assertThat(normalizeCache.normalize("scan.lti", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo2"));
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    @Test(timeout = 2_000L)
+    public void testUnknownSchemaBypassesCache() throws Exception {
+        System.out.println("testUnknownSchemaBypassesCache");
+        Config config = config("NORMALIZE_CACHE_SCHEMA_CHECK=3600");
+        AtomicInteger loads = new AtomicInteger();
+        ScanExecutor executor = ScanExecutor.instance(config, null);
+        try {
+            NormalizeCache normalizeCache = NormalizeCache.instance(config, solr(null), ExpiringCaches.cacheManager(new AtomicLong()), executor);
+            normalizeCache.checkSchemaVersion();
+            assertThat(normalizeCache.normalize("scan.lti", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo1"));
+            assertThat(normalizeCache.normalize("scan.lti", "Foo", () -> "foo" + loads.incrementAndGet()), is("foo2"));
+            assertThat(normalizeCache.getHits(), is(0L));
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    /**
+     * A SolR with a schema version
+     *
+     * @param version the version, null if SolR is down
+     * @return SolrApi
+     */
+    private static SolrApi solr(AtomicInteger version) {
+        return new SolrApi() {
+            @Override
+            public int schemaVersion() throws SolrServerException, IOException {
+                if (version == null)
+                    throw new IOException("SolR is down");
+                return version.get();
+            }
+        };
+    }
+
+    private static Config config(String... extra) {
+        ArrayList<String> env = new ArrayList<>(asList(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api"));
+        env.addAll(asList(extra));
+        Config config = new Config(env.toArray(String[]::new));
+        config.init();
+        return config;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.List;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class NormalizerTest {
+
+    @Test(timeout = 2_000L)
+    public void testBuildFromSchema() throws Exception {
+        System.out.println("testBuildFromSchema");
+        NamedList<Object> tokenizer = new NamedList<>();
+        tokenizer.add("class", "solr.KeywordTokenizerFactory");
+        NamedList<Object> lowercase = new NamedList<>();
+        lowercase.add("class", "solr.LowerCaseFilterFactory");
+        NamedList<Object> pattern = new NamedList<>();
+        pattern.add("class", "solr.PatternReplaceFilterFactory");
+        pattern.add("pattern", "\\s+");
+        pattern.add("replacement", " ");
+        NamedList<Object> analyzer = new NamedList<>();
+        analyzer.add("tokenizer", tokenizer);
+        analyzer.add("filters", List.of(lowercase, pattern));
+        NamedList<Object> fieldType = new NamedList<>();
+        fieldType.add("name", "scan");
+        fieldType.add("class", "solr.TextField");
+        fieldType.add("indexAnalyzer", analyzer);
+
+        Analyzer built = Normalizer.build(fieldType);
+        assertThat(Normalizer.analyze(built, "scan.lti", "Hello   Dolly"), is("hello dolly"));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testMultipleTokensIsNotNormalized() throws Exception {
+        System.out.println("testMultipleTokensIsNotNormalized");
+        NamedList<Object> tokenizer = new NamedList<>();
+        tokenizer.add("class", "solr.WhitespaceTokenizerFactory");
+        NamedList<Object> analyzer = new NamedList<>();
+        analyzer.add("tokenizer", tokenizer);
+        NamedList<Object> fieldType = new NamedList<>();
+        fieldType.add("name", "text");
+        fieldType.add("class", "solr.TextField");
+        fieldType.add("analyzer", analyzer);
+
+        Analyzer built = Normalizer.build(fieldType);
+        assertThat(Normalizer.analyze(built, "text", "hello dolly"), nullValue());
+    }
+
+    @Test(timeout = 2_000L, expected = IllegalArgumentException.class)
+    public void testUnknownFactory() throws Exception {
+        System.out.println("testUnknownFactory");
+        NamedList<Object> tokenizer = new NamedList<>();
+        tokenizer.add("class", "dk.dbc.solr.Custom");
+        NamedList<Object> analyzer = new NamedList<>();
+        analyzer.add("tokenizer", tokenizer);
+        NamedList<Object> fieldType = new NamedList<>();
+        fieldType.add("name", "custom");
+        fieldType.add("class", "solr.TextField");
+        fieldType.add("analyzer", analyzer);
+
+        Normalizer.build(fieldType);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class OverFetchTest {
+
+    private static OverFetch overFetch() {
+        Config config = new Config(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api",
+                "OVERFETCH_WINDOW=100",
+                "OVERFETCH_MIN_SAMPLES=10",
+                "OVERFETCH_MAX_REGISTERS=2"
+        );
+        config.init();
+        return OverFetch.instance(config);
+    }
+
+    @Test(timeout = 2_000L)
+    public void testDefaultsUntilSampled() throws Exception {
+        System.out.println("testDefaultsUntilSampled");
+        OverFetch overFetch = overFetch();
+        overFetch.record("reg", 5, 5);
+        assertThat(overFetch.estimate("reg").fetch(20), is(27));
+        assertThat(overFetch.estimate("reg").overhead(20), is(OverFetch.DEFAULT_OVERHEAD));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testLearnsZeroHitRatio() throws Exception {
+        System.out.println("testLearnsZeroHitRatio");
+        OverFetch overFetch = overFetch();
+        overFetch.record("none", 20, 0);
+        overFetch.record("half", 20, 10);
+        assertThat(overFetch.estimate("none").fetch(20), is(22));
+        assertThat(overFetch.estimate("none").overhead(20), is(1));
+        assertThat(overFetch.estimate("half").fetch(20), is(42));
+        assertThat(overFetch.estimate("half").overhead(20), is(10));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testRollingWindow() throws Exception {
+        System.out.println("testRollingWindow");
+        OverFetch overFetch = overFetch();
+        overFetch.record("reg", 100, 100);
+        overFetch.record("reg", 90, 0);
+        assertThat(overFetch.learned().get("reg").zeroHitRatio, is(0.1));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testBoundedRegisters() throws Exception {
+        System.out.println("testBoundedRegisters");
+        OverFetch overFetch = overFetch();
+        overFetch.record("a", 20, 0);
+        overFetch.record("b", 20, 0);
+        overFetch.record("c", 20, 0);
+        assertThat(overFetch.getRegisters(), is(2));
+        assertThat(overFetch.estimate("c").fetch(20), is(27));
+    }
+}
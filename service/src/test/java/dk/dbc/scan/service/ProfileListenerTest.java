@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ProfileListenerTest {
+
+    @Test(timeout = 2_000L)
+    public void testChanged() throws Exception {
+        System.out.println("testChanged");
+        List<String> changed = new ArrayList<>();
+        ProfileServiceCache psCache = new ProfileServiceCache() {
+            @Override
+            public void changed(String agencyId, String profile) {
+                changed.add(agencyId + "/" + profile);
+            }
+        };
+        ProfileListener listener = ProfileListener.instance(null, psCache);
+        listener.changed("123456-abc");
+        listener.changed("7-some-name");
+        listener.changed("abc");
+        listener.changed("x-abc");
+        assertThat(changed, is(List.of("123456/abc", "000007/some-name")));
+        assertThat(listener.getNotified(), is(4L));
+    }
+}
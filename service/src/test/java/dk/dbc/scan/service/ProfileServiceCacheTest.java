@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.cache.Cache;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ProfileServiceCacheTest {
+
+    @Test(timeout = 2_000L)
+    public void testEntryRoundTrip() throws Exception {
+        System.out.println("testEntryRoundTrip");
+        ProfileServiceCache.Entry entry = ProfileServiceCache.Entry.decode(
+                new ProfileServiceCache.Entry(1234L, "rec.collectionIdentifier:(\"a:b\" OR c)").encode());
+        assertThat(entry.fetched, is(1234L));
+        assertThat(entry.filterQuery, is("rec.collectionIdentifier:(\"a:b\" OR c)"));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testEntryWithoutFilterQuery() throws Exception {
+        System.out.println("testEntryWithoutFilterQuery");
+        ProfileServiceCache.Entry entry = ProfileServiceCache.Entry.decode(new ProfileServiceCache.Entry(1234L, null).encode());
+        assertThat(entry.fetched, is(1234L));
+        assertThat(entry.filterQuery, nullValue());
+    }
+
+    @Test(timeout = 2_000L)
+    public void testMalformedEntry() throws Exception {
+        System.out.println("testMalformedEntry");
+        assertThat(ProfileServiceCache.Entry.decode("rec.collectionIdentifier:a"), nullValue());
+        assertThat(ProfileServiceCache.Entry.decode(null), nullValue());
+    }
+
+    @Test(timeout = 2_000L)
+    public void testRefreshedEntryOutlivesFirstExpiry() throws Exception {
+        System.out.println("testRefreshedEntryOutlivesFirstExpiry");
+        AtomicLong now = new AtomicLong();
+        AtomicInteger lookups = new AtomicInteger();
+        List<String> trackingIds = Collections.synchronizedList(new ArrayList<>());
+        ProfileServiceCache psCache = profileServiceCache(now, trackingId -> {
+                                                              trackingIds.add(trackingId);
+                                                              return "fq" + lookups.incrementAndGet();
+                                                          });
+        Cache<String, String> cache = psCache.cacheManager.getCache(ProfileServiceCache.CACHE_NAME);
+        try {
+            // Lives until 120s (CACHE_TIMEOUT + PROFILE_STALE_GRACE)
+            cache.put("123456|p", new ProfileServiceCache.Entry(System.currentTimeMillis() - 100_000L, "fq0").encode());
+            now.set(110_000L);
+            assertThat(psCache.filterQueryFor("123456", "p", "t"), is("fq0"));
+            while (!"fq1".equals(ProfileServiceCache.Entry.decode(cache.get("123456|p")).filterQuery)) {
+                Thread.sleep(5L);
+            }
+            now.set(150_000L);
+            assertThat(psCache.filterQueryFor("123456", "p", "t"), is("fq1"));
+            assertThat(lookups.get(), is(1));
+            assertThat(trackingIds, is(asList("profile-refresh")));
+        } finally {
+            psCache.executor.destroy();
+        }
+    }
+
+    @Test(timeout = 2_000L)
+    public void testKeptEntryOutlivesFirstExpiry() throws Exception {
+        System.out.println("testKeptEntryOutlivesFirstExpiry");
+        AtomicLong now = new AtomicLong();
+        ProfileServiceCache psCache = profileServiceCache(now, trackingId -> {
+                                                              throw new IOException("VipCore is down");
+                                                          });
+        Cache<String, String> cache = psCache.cacheManager.getCache(ProfileServiceCache.CACHE_NAME);
+        try {
+            cache.put("123456|p", new ProfileServiceCache.Entry(System.currentTimeMillis() - 100_000L, "fq0").encode());
+            now.set(110_000L);
+            assertThat(psCache.filterQueryFor("123456", "p", "t"), is("fq0"));
+            while (psCache.getKept() == 0L) {
+                Thread.sleep(5L);
+            }
+            now.set(150_000L);
+            assertThat(psCache.filterQueryFor("123456", "p", "t"), is("fq0"));
+        } finally {
+            psCache.executor.destroy();
+        }
+    }
+
+    @Test(timeout = 2_000L)
+    public void testChangedProfileIsFetchedWithTrackingId() throws Exception {
+        System.out.println("testChangedProfileIsFetchedWithTrackingId");
+        List<String> trackingIds = Collections.synchronizedList(new ArrayList<>());
+        ProfileServiceCache psCache = profileServiceCache(new AtomicLong(), trackingId -> {
+                                                              trackingIds.add(trackingId);
+                                                              return "fq1";
+                                                          });
+        Cache<String, String> cache = psCache.cacheManager.getCache(ProfileServiceCache.CACHE_NAME);
+        try {
+            cache.put("123456|p", new ProfileServiceCache.Entry(System.currentTimeMillis(), "fq0").encode());
+            psCache.changed("123456", "p");
+            while (cache.get("123456|p") == null) {
+                Thread.sleep(5L);
+            }
+            assertThat(ProfileServiceCache.Entry.decode(cache.get("123456|p")).filterQuery, is("fq1"));
+            assertThat(trackingIds, is(asList("profile-changed")));
+        } finally {
+            psCache.executor.destroy();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Lookup {
+
+        String lookup(String trackingId) throws IOException;
+    }
+
+    private static ProfileServiceCache profileServiceCache(AtomicLong now, Lookup lookup) {
+        ProfileServiceCache psCache = new ProfileServiceCache() {
+            @Override
+            String lookup(String agencyId, String profile, String trackingId) throws IOException {
+                return lookup.lookup(trackingId);
+            }
+        };
+        psCache.config = config("CACHE_TIMEOUT=100", "PROFILE_STALE_GRACE=20");
+        psCache.coalescer = Coalescer.instance();
+        psCache.cacheManager = ExpiringCaches.cacheManager(now);
+        psCache.executor = ScanExecutor.instance(psCache.config, null);
+        psCache.init();
+        return psCache;
+    }
+
+    private static Config config(String... extra) {
+        ArrayList<String> env = new ArrayList<>(asList(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api"));
+        env.addAll(asList(extra));
+        Config config = new Config(env.toArray(String[]::new));
+        config.init();
+        return config;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ProfileWarmupTest {
+
+    @Test(timeout = 2_000L)
+    public void testWarmupFromList() throws Exception {
+        System.out.println("testWarmupFromList");
+        Config config = config("PROFILE_WARMUP_LIST=123456-abc, 7-def,1-bad");
+        Set<String> looked = ConcurrentHashMap.newKeySet();
+        ProfileServiceCache psCache = new ProfileServiceCache() {
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+
+            @Override
+            public String filterQueryFor(String agencyId, String profile, String trackingId) throws IOException {
+                looked.add(agencyId + "/" + profile);
+                if (profile.equals("bad"))
+                    throw new IOException("bad profile");
+                return "fq";
+            }
+        };
+        ProfileWarmup warmup = ProfileWarmup.instance(config, psCache, ScanExecutor.instance(config, null));
+        while (warmup.call().getStatus() != HealthCheckResponse.Status.UP) {
+            Thread.sleep(10L);
+        }
+        assertThat(looked, is(Set.of("123456/abc", "000007/def", "000001/bad")));
+        assertThat(warmup.call().getData().get().get("loaded"), is(2L));
+        assertThat(warmup.call().getData().get().get("failed"), is(1L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testMalformedProfileDoesNotStopWorker() throws Exception {
+        System.out.println("testMalformedProfileDoesNotStopWorker");
+        Config config = config("PROFILE_WARMUP_LIST=99999999999-big,1-abc", "PROFILE_WARMUP_PARALLEL=1");
+        ProfileServiceCache psCache = new ProfileServiceCache() {
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+
+            @Override
+            public String filterQueryFor(String agencyId, String profile, String trackingId) throws IOException {
+                return "fq";
+            }
+        };
+        ProfileWarmup warmup = ProfileWarmup.instance(config, psCache, ScanExecutor.instance(config, null));
+        while (warmup.call().getStatus() != HealthCheckResponse.Status.UP) {
+            Thread.sleep(10L);
+        }
+        assertThat(warmup.call().getData().get().get("loaded"), is(1L));
+        assertThat(warmup.call().getData().get().get("failed"), is(1L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testReadyAfterTimeout() throws Exception {
+        System.out.println("testReadyAfterTimeout");
+        Config config = config("PROFILE_WARMUP_LIST=1-slow", "PROFILE_WARMUP_TIMEOUT=1");
+        CountDownLatch release = new CountDownLatch(1);
+        ProfileServiceCache psCache = new ProfileServiceCache() {
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+
+            @Override
+            public String filterQueryFor(String agencyId, String profile, String trackingId) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return "fq";
+            }
+        };
+        ProfileWarmup warmup = ProfileWarmup.instance(config, psCache, ScanExecutor.instance(config, null));
+        assertThat(warmup.call().getStatus(), is(HealthCheckResponse.Status.DOWN));
+        Thread.sleep(1_100L);
+        assertThat(warmup.call().getStatus(), is(HealthCheckResponse.Status.UP));
+        release.countDown();
+    }
+
+    @Test(timeout = 2_000L)
+    public void testDisabled() throws Exception {
+        System.out.println("testDisabled");
+        Config config = config();
+        ProfileWarmup warmup = ProfileWarmup.instance(config, new ProfileServiceCache(), ScanExecutor.instance(config, null));
+        assertThat(warmup.call().getStatus(), is(HealthCheckResponse.Status.UP));
+    }
+
+    private static Config config(String... extra) {
+        ArrayList<String> env = new ArrayList<>(asList(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api",
+                "EXECUTOR_MODE=virtual"));
+        env.addAll(asList(extra));
+        Config config = new Config(env.toArray(String[]::new));
+        config.init();
+        return config;
+    }
+}
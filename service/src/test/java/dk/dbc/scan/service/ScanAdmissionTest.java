@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ScanAdmissionTest {
+
+    @Test(timeout = 2_000L)
+    public void testQueueAndReject() throws Exception {
+        System.out.println("testQueueAndReject");
+        ScanAdmission admission = ScanAdmission.instance(config("ADMISSION_LIMIT=1", "ADMISSION_QUEUE=1", "ADMISSION_QUEUE_TIMEOUT=60000"));
+        CompletableFuture<String> scan = new CompletableFuture<>();
+
+        CompletableFuture<String> first = admission.admit(() -> scan);
+        CompletableFuture<String> second = admission.admit(() -> CompletableFuture.completedFuture("second"));
+        CompletableFuture<String> third = admission.admit(() -> CompletableFuture.completedFuture("third"));
+
+        assertThat(admission.getRunning(), is(1));
+        assertThat(admission.getQueued(), is(1));
+        assertThat(rejection(third), is(true));
+        assertThat(second.isDone(), is(false));
+
+        scan.complete("first");
+        assertThat(first.get(), is("first"));
+        assertThat(second.get(), is("second"));
+        assertThat(admission.getRunning(), is(0));
+        assertThat(admission.getAdmitted(), is(2L));
+        assertThat(admission.getRejected(), is(1L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testQueueTimeout() throws Exception {
+        System.out.println("testQueueTimeout");
+        ScanAdmission admission = ScanAdmission.instance(config("ADMISSION_LIMIT=1", "ADMISSION_QUEUE_TIMEOUT=10"));
+        admission.admit(CompletableFuture::new);
+
+        CompletableFuture<String> waiting = admission.admit(() -> CompletableFuture.completedFuture("late"));
+        assertThat(rejection(waiting), is(true));
+        assertThat(admission.getQueued(), is(0));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testAimd() throws Exception {
+        System.out.println("testAimd");
+        ScanAdmission admission = ScanAdmission.instance(config("ADMISSION_LIMIT=20", "ADMISSION_MODE=aimd", "ADMISSION_LATENCY_TARGET=100"));
+        for (int i = 0 ; i < ScanAdmission.SAMPLES ; i++) {
+            admission.record(500);
+        }
+        assertThat(admission.getLimit(), is(18));
+        for (int i = 0 ; i < ScanAdmission.SAMPLES ; i++) {
+            admission.record(10);
+        }
+        assertThat(admission.getLimit(), is(18)); // Not raised without queued scans
+    }
+
+    private static boolean rejection(CompletableFuture<String> future) throws InterruptedException {
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(ScanAdmission.RejectedException.class));
+            return true;
+        }
+    }
+
+    private static Config config(String... extra) {
+        ArrayList<String> env = new ArrayList<>(asList(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api"));
+        env.addAll(asList(extra));
+        Config config = new Config(env.toArray(String[]::new));
+        config.init();
+        return config;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ScanEventsTest {
+
+    @Test(timeout = 2_000L)
+    public void testOutcome() throws Exception {
+        System.out.println("testOutcome");
+        assertThat(ScanEvents.outcome(null), is(ScanEvents.OK));
+        assertThat(ScanEvents.outcome(new TimeoutException()), is(ScanEvents.TIMEOUT));
+        assertThat(ScanEvents.outcome(new CompletionException(new SolrApi.TimeAllowedExceededException("terms"))), is(ScanEvents.TIMEOUT));
+        assertThat(ScanEvents.outcome(new CompletionException(new IllegalStateException())), is(ScanEvents.ERROR));
+    }
+}
@@ -19,6 +19,7 @@
 package dk.dbc.scan.service;
 
 import dk.dbc.scan.service.ScanResponse.Term;
+import org.junit.After;
 import org.junit.Test;
 
 import java.util.Collections;
@@ -40,6 +41,17 @@ import static org.hamcrest.MatcherAssert.assertThat;
  */
 public class ScanIT extends IntegrationTestBase {
 
+    private ExecutorService mes;
+    private ScanExecutor executor;
+
+    @After
+    public void shutdown() {
+        if (executor != null)
+            executor.destroy();
+        if (mes != null)
+            mes.shutdownNow();
+    }
+
     @Test(timeout = 20_000L)
     public void testCase() throws Exception {
         System.out.println("testCase");
@@ -86,21 +98,38 @@ public class ScanIT extends IntegrationTestBase {
                         .withCollectionIdentifier("654321-danbib"))
                 .commit();
 
-        ExecutorService mes = Executors.newFixedThreadPool(25);
+        mes = Executors.newFixedThreadPool(25);
 
         Config config = new Config(
                 "SOLR_URL=" + ZK_URL + "corepo",
                 "SOLR_APPID=datawellscan",
+                "NORMALIZE_MODE=verify",
+                "NORMALIZE_VERIFY_EVERY=1",
+                "HITCOUNT_DISPATCH_WINDOW=2",
+                "ADMISSION_LIMIT=5",
                 "VIPCORE_ENDPOINT=" + WIREMOCK_URL + "/vipcore/api"
         );
         config.init();
 
-        ProfileServiceCache psCache = ProfileServiceCache.instance(config);
-        SolrApi solrApi = SolrApi.instance(config);
-        ScanLogic scanLogic = ScanLogic.instance(config, psCache, solrApi, mes);
-        Scan scan = Scan.instance(config, scanLogic);
+        Coalescer coalescer = Coalescer.instance();
+        CircuitBreakers breakers = CircuitBreakers.instance(config);
+        ScanAdmission admission = ScanAdmission.instance(config);
+        executor = ScanExecutor.instance(config, mes);
+        ProfileServiceCache psCache = ProfileServiceCache.instance(config, coalescer, breakers, null, executor);
+        HitcountLimiter limiter = HitcountLimiter.instance(config);
+        SolrApi solrApi = SolrApi.instance(config, Hedger.instance(config), coalescer, breakers, admission, limiter);
+        HitcountCache hitcountCache = HitcountCache.instance(config, null);
+        HitcountDispatcher dispatcher = HitcountDispatcher.instance(config, solrApi);
+        ScanCursorCache cursors = ScanCursorCache.instance(config, null);
+        ScanPrefetcher prefetcher = ScanPrefetcher.instance(config, limiter, null);
+        NormalizeCache normalizeCache = NormalizeCache.instance(config, solrApi, null, executor);
+        Normalizer normalizer = Normalizer.instance(config, solrApi);
+        OverFetch overFetch = OverFetch.instance(config);
+        ScanLogic scanLogic = ScanLogic.instance(config, psCache, solrApi, limiter, hitcountCache, dispatcher, cursors, prefetcher, normalizeCache, normalizer, overFetch, executor, breakers, ScanMetrics.instance(config, null));
+        Scan scan = Scan.instance(config, scanLogic, admission);
 
-        Set<String> terms1 = scan.scan(123456, "that", "hello", "scan.lti", 20, false, "test")
+        Set<String> terms1 = scan.scan(123456, "that", "hello", "scan.lti", 20, false, null, null, "test")
+                .toCompletableFuture().join()
                 .getResult()
                 .getTerms()
                 .stream()
@@ -112,7 +141,8 @@ public class ScanIT extends IntegrationTestBase {
 
         assertThat(terms1.size(), is(7)); // test that null and empty terms no not get included in response
 
-        Set<String> terms2 = scan.scan(123456, "that", "hello", "scan.lti", 2, false, "test")
+        Set<String> terms2 = scan.scan(123456, "that", "hello", "scan.lti", 2, false, null, null, "test")
+                .toCompletableFuture().join()
                 .getResult()
                 .getTerms()
                 .stream()
@@ -122,6 +152,13 @@ public class ScanIT extends IntegrationTestBase {
         assertThat(terms2.size(), is(2));
         assertThat(terms2, not(hasItem("hello world")));
 
+        ScanResponse.Result page = scan.scan(123456, "that", "hello cat", "scan.lti", 2, true, null, null, "test")
+                .toCompletableFuture().join()
+                .getResult();
+        assertThat(page.getTerms().stream().map(Term::getTerm).toList(), is(List.of("hello dolly", "hello ecma")));
+        assertThat(page.getContinueAfter(), is("hello ecma"));
+        assertThat(page.isPartial(), is(false));
+
 
         List<Runnable> pending = mes.shutdownNow();
         assertThat(pending, is(Collections.EMPTY_LIST));
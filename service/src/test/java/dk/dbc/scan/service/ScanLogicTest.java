@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ScanLogicTest {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Map<String, Long>>> hitcounts = new ConcurrentHashMap<>();
+    private final AtomicInteger scans = new AtomicInteger();
+    private ExecutorService mes;
+    private ScanExecutor executor;
+    private HitcountLimiter limiter;
+
+    @After
+    public void shutdown() {
+        if (executor != null)
+            executor.destroy();
+        if (mes != null)
+            mes.shutdownNow();
+    }
+
+    @Test(timeout = 2_000L)
+    public void testBatchSize() throws Exception {
+        System.out.println("testBatchSize");
+        assertThat(ScanLogic.batchSize(1, 25), is(1));
+        assertThat(ScanLogic.batchSize(13, 25), is(13));
+        assertThat(ScanLogic.batchSize(25, 25), is(25));
+        assertThat(ScanLogic.batchSize(26, 25), is(13));
+        assertThat(ScanLogic.batchSize(103, 25), is(21));
+        assertThat(ScanLogic.batchSize(7, 1), is(1));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testUnneededBatchesAreCancelled() throws Exception {
+        System.out.println("testUnneededBatchesAreCancelled");
+        ScanLogic scanLogic = scanLogic(List.of("b", "c", "d", "e", "f"), "HITCOUNT_BATCH_SIZE=1");
+
+        CompletableFuture<ScanResponse.Result> future = scanLogic.scanAsync("scan.lti", "a", true, 2, "123456", "p", null, Deadline.in(10_000), "test");
+        hitcount("b", 1L);
+        hitcount("c", 1L);
+        ScanResponse.Result result = future.get();
+
+        assertThat(terms(result), is(List.of("b", "c")));
+        assertThat(result.getContinueAfter(), is("c"));
+        assertThat(result.isPartial(), is(false));
+        assertThat(hitcounts.get("d").isCancelled(), is(true));
+        assertThat(hitcounts.get("e").isCancelled(), is(true));
+        assertThat(hitcounts.get("f").isCancelled(), is(true));
+        assertThat(limiter.getPermitsInUse(), is(0));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testBatchesAreUsedInIndexOrder() throws Exception {
+        System.out.println("testBatchesAreUsedInIndexOrder");
+        ScanLogic scanLogic = scanLogic(List.of("b", "c", "d", "e", "f"), "HITCOUNT_BATCH_SIZE=1");
+
+        CompletableFuture<ScanResponse.Result> future = scanLogic.scanAsync("scan.lti", "a", true, 2, "123456", "p", null, Deadline.in(10_000), "test");
+        hitcount("c", 1L);
+        hitcount("d", 1L);
+        Thread.sleep(50);
+        assertThat(future.isDone(), is(false)); // Waiting for "b"
+
+        hitcount("b", 0L);
+        ScanResponse.Result result = future.get();
+        assertThat(terms(result), is(List.of("c", "d")));
+        assertThat(result.getContinueAfter(), is("d"));
+        assertThat(result.isPartial(), is(false));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testFailedBatchStopsThePage() throws Exception {
+        System.out.println("testFailedBatchStopsThePage");
+        ScanLogic scanLogic = scanLogic(List.of("b", "c", "d", "e", "f"), "HITCOUNT_BATCH_SIZE=1");
+
+        CompletableFuture<ScanResponse.Result> future = scanLogic.scanAsync("scan.lti", "a", true, 3, "123456", "p", null, Deadline.in(10_000), "test");
+        hitcount("b", 1L);
+        hitcount("d", 1L);
+        while (!hitcounts.containsKey("c")) {
+            Thread.sleep(1);
+        }
+        hitcounts.get("c").completeExceptionally(new IOException("SolR is down"));
+        ScanResponse.Result result = future.get();
+
+        // "c" isn't skipped, the page stops before it
+        assertThat(result.isPartial(), is(true));
+        assertThat(terms(result), is(List.of("b")));
+        assertThat(result.getContinueAfter(), is("b"));
+
+        // and it is checked again on the next page
+        hitcounts.clear();
+        future = scanLogic.scanAsync("scan.lti", "b", true, 2, "123456", "p", result.getCursor(), Deadline.in(10_000), "test");
+        hitcount("c", 2L);
+        assertThat(terms(future.get()), is(List.of("c", "d")));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testResumeFromCursor() throws Exception {
+        System.out.println("testResumeFromCursor");
+        ScanLogic scanLogic = scanLogic(List.of("b", "c", "d", "e", "f"), "HITCOUNT_BATCH_SIZE=1");
+
+        CompletableFuture<ScanResponse.Result> future = scanLogic.scanAsync("scan.lti", "a", true, 2, "123456", "p", null, Deadline.in(10_000), "test");
+        hitcount("d", 4L); // Validated, but not used on this page
+        hitcount("b", 1L);
+        hitcount("c", 1L);
+        ScanResponse.Result first = future.get();
+        assertThat(terms(first), is(List.of("b", "c")));
+        assertThat(first.getCursor() == null, is(false));
+
+        // The leftover terms are used, and "d" isn't looked up again
+        hitcounts.clear();
+        future = scanLogic.scanAsync("scan.lti", "c", true, 2, "123456", "p", first.getCursor(), Deadline.in(10_000), "test");
+        hitcount("e", 2L);
+        ScanResponse.Result second = future.get();
+        assertThat(terms(second), is(List.of("d", "e")));
+        assertThat(second.getTerms().get(0).getCount(), is(4L));
+        assertThat(hitcounts.containsKey("d"), is(false));
+        assertThat(scans.get(), is(1));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testPartialWhenTimeRunsOut() throws Exception {
+        System.out.println("testPartialWhenTimeRunsOut");
+        ScanLogic scanLogic = scanLogic(List.of("b", "c", "d", "e", "f"), "HITCOUNT_BATCH_SIZE=1");
+
+        CompletableFuture<ScanResponse.Result> future = scanLogic.scanAsync("scan.lti", "a", true, 3, "123456", "p", null, Deadline.in(100), "test");
+        hitcount("b", 1L);
+        hitcount("d", 1L); // Not used, "c" is before it
+        ScanResponse.Result result = future.get();
+
+        assertThat(result.isPartial(), is(true));
+        assertThat(terms(result), is(List.of("b")));
+        assertThat(result.getContinueAfter(), is("b"));
+        assertThat(hitcounts.get("c").isCancelled(), is(true));
+        assertThat(limiter.getPermitsInUse(), is(0));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testPartialWithoutTermsContinuesFrom() throws Exception {
+        System.out.println("testPartialWithoutTermsContinuesFrom");
+        ScanLogic scanLogic = scanLogic(List.of("b", "c", "d", "e", "f"), "HITCOUNT_BATCH_SIZE=1");
+
+        ScanResponse.Result result = scanLogic.scanAsync("scan.lti", "a", true, 3, "123456", "p", null, Deadline.in(50), "test").get();
+
+        assertThat(result.isPartial(), is(true));
+        assertThat(terms(result), is(List.of()));
+        assertThat(result.getContinueAfter(), is("a"));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testPartialWhenRequestTimesOut() throws Exception {
+        System.out.println("testPartialWhenRequestTimesOut");
+        ScanLogic scanLogic = scanLogic(List.of("b", "c", "d", "e", "f"), "HITCOUNT_BATCH_SIZE=1");
+
+        CompletableFuture<ScanResponse.Result> future = scanLogic.scanAsync("scan.lti", "a", true, 3, "123456", "p", null, Deadline.in(10_000), "test");
+        hitcount("b", 1L);
+        while (!hitcounts.containsKey("c")) {
+            Thread.sleep(1);
+        }
+        hitcounts.get("c").completeExceptionally(new TimeoutException());
+        ScanResponse.Result result = future.get();
+
+        assertThat(result.isPartial(), is(true));
+        assertThat(terms(result), is(List.of("b")));
+        assertThat(result.getContinueAfter(), is("b"));
+    }
+
+    /**
+     * Complete the hitcount request for a term, when it has been sent
+     *
+     * @param term  the term
+     * @param count its hitcount
+     * @throws InterruptedException If the test is interrupted
+     */
+    private void hitcount(String term, long count) throws InterruptedException {
+        while (!hitcounts.containsKey(term)) {
+            Thread.sleep(1);
+        }
+        hitcounts.get(term).complete(Map.of(term, count));
+    }
+
+    private static List<String> terms(ScanResponse.Result result) {
+        return result.getTerms().stream()
+                .map(ScanResponse.Term::getTerm)
+                .toList();
+    }
+
+    /**
+     * Make a scan logic, where the hitcount requests are completed by the
+     * test
+     *
+     * @param index the terms in the register
+     * @param extra configuration
+     * @return scan logic
+     */
+    private ScanLogic scanLogic(List<String> index, String... extra) {
+        Config config = config(extra);
+        mes = Executors.newFixedThreadPool(2);
+        executor = ScanExecutor.instance(config, mes);
+        limiter = HitcountLimiter.instance(config);
+        SolrApi solr = new SolrApi() {
+            @Override
+            public CompletableFuture<List<String>> scanAsync(String fieldName, String fieldValue, boolean cont, int count, long timeAllowed, String trackingId, Executor executor) {
+                scans.incrementAndGet();
+                return CompletableFuture.completedFuture(index.stream()
+                        .filter(term -> cont ? term.compareTo(fieldValue) > 0 : term.compareTo(fieldValue) >= 0)
+                        .limit(count)
+                        .toList());
+            }
+
+            @Override
+            public CompletableFuture<Map<String, Long>> getHitCountsAsync(String fieldName, List<String> fieldValues, String filterQuery, long timeAllowed, Executor executor) {
+                CompletableFuture<Map<String, Long>> request = new CompletableFuture<>();
+                fieldValues.forEach(term -> hitcounts.put(term, request));
+                return request;
+            }
+        };
+        ProfileServiceCache psCache = new ProfileServiceCache() {
+            @Override
+            public String filterQueryFor(String agencyId, String profile, String trackingId) {
+                return "fq";
+            }
+        };
+        return ScanLogic.instance(config, psCache, solr, limiter, HitcountCache.instance(config, null), HitcountDispatcher.instance(config, solr),
+                                  ScanCursorCache.instance(config, ExpiringCaches.cacheManager(new AtomicLong())), ScanPrefetcher.instance(config, limiter, null),
+                                  null, null, OverFetch.instance(config), executor, CircuitBreakers.instance(config), ScanMetrics.instance(config, null));
+    }
+
+    private static Config config(String... extra) {
+        ArrayList<String> env = new ArrayList<>(asList(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api"));
+        env.addAll(asList(extra));
+        Config config = new Config(env.toArray(String[]::new));
+        config.init();
+        return config;
+    }
+}
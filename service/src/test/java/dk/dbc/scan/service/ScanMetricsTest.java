@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ScanMetricsTest {
+
+    @Test(timeout = 2_000L)
+    public void testRegisterTagsAreBounded() throws Exception {
+        System.out.println("testRegisterTagsAreBounded");
+        Config config = new Config("SOLR_URL=http://localhost/solr/corepo",
+                                   "SOLR_APPID=test",
+                                   "VIPCORE_ENDPOINT=http://localhost/vipcore/api",
+                                   "METRICS_MAX_REGISTERS=2");
+        config.init();
+        ScanMetrics metrics = ScanMetrics.instance(config, null);
+
+        assertThat(metrics.admit("scan.lti"), is("scan.lti"));
+        assertThat(metrics.admit("scan.lfo"), is("scan.lfo"));
+        assertThat(metrics.admit("scan.lsu"), is(ScanMetrics.OTHER));
+        assertThat(metrics.tag("scan.lti"), is("scan.lti"));
+        assertThat(metrics.tag("scan.lsu"), is(ScanMetrics.OTHER));
+        metrics.scan("scan.lsu", new ScanMetrics.Stats()); // No registry
+    }
+
+    @Test(timeout = 2_000L)
+    public void testOnlyScansWithTermsGetTags() throws Exception {
+        System.out.println("testOnlyScansWithTermsGetTags");
+        Config config = new Config("SOLR_URL=http://localhost/solr/corepo",
+                                   "SOLR_APPID=test",
+                                   "VIPCORE_ENDPOINT=http://localhost/vipcore/api",
+                                   "METRICS_MAX_REGISTERS=1");
+        config.init();
+        ScanMetrics metrics = ScanMetrics.instance(config, null);
+
+        // Timings and empty scans don't use up the tags
+        metrics.normalize("no.such.register", 5);
+        metrics.scan("no.such.register", new ScanMetrics.Stats());
+        assertThat(metrics.tag("no.such.register"), is(ScanMetrics.OTHER));
+
+        ScanMetrics.Stats stats = new ScanMetrics.Stats();
+        stats.fetched(3);
+        metrics.scan("scan.lti", stats);
+        assertThat(metrics.tag("scan.lti"), is("scan.lti"));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class ScanPrefetcherTest {
+
+    @Test(timeout = 2_000L)
+    public void testStoreAndLookup() throws Exception {
+        System.out.println("testStoreAndLookup");
+        Config config = config("PREFETCH_PARALLEL=1");
+        ScanPrefetcher prefetcher = ScanPrefetcher.instance(config, HitcountLimiter.instance(config), ExpiringCaches.cacheManager(new AtomicLong()));
+
+        ScanResponse.Term term = new ScanResponse.Term("b");
+        term.setCount(3L);
+        ScanResponse.Result page = new ScanResponse.Result("b", List.of(term));
+        page.setCursor("cursor");
+        prefetcher.store("scan.lti", "123456", "p", "a", 1, page);
+
+        ScanResponse.Result found = prefetcher.lookup("scan.lti", "123456", "p", "a", 1);
+        assertThat(found.getContinueAfter(), is("b"));
+        assertThat(found.getCursor(), is("cursor"));
+        assertThat(found.getTerms().get(0).getTerm(), is("b"));
+        assertThat(found.getTerms().get(0).getCount(), is(3L));
+
+        // Every part of the key matters
+        assertThat(prefetcher.lookup("scan.lti", "123456", "p", "a", 2), nullValue());
+        assertThat(prefetcher.lookup("scan.lti", "123456", "p", "b", 1), nullValue());
+        assertThat(prefetcher.lookup("scan.lti", "123456", "q", "a", 1), nullValue());
+        assertThat(prefetcher.lookup("scan.lti", "654321", "p", "a", 1), nullValue());
+        assertThat(prefetcher.lookup("scan.lfo", "123456", "p", "a", 1), nullValue());
+        assertThat(prefetcher.getHitRate(), is(100.0 / 6));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testThrottledByParallel() throws Exception {
+        System.out.println("testThrottledByParallel");
+        Config config = config("PREFETCH_PARALLEL=1");
+        ScanPrefetcher prefetcher = ScanPrefetcher.instance(config, HitcountLimiter.instance(config), ExpiringCaches.cacheManager(new AtomicLong()));
+
+        assertThat(prefetcher.tryStart(), is(true));
+        assertThat(prefetcher.tryStart(), is(false));
+        prefetcher.done();
+        assertThat(prefetcher.tryStart(), is(true));
+        assertThat(prefetcher.getStarted(), is(2L));
+        assertThat(prefetcher.getSkipped(), is(1L));
+    }
+
+    @Test(timeout = 2_000L)
+    public void testThrottledByHitcountLoad() throws Exception {
+        System.out.println("testThrottledByHitcountLoad");
+        Config config = config("PREFETCH_PARALLEL=10", "PARALLEL_HITCOUNT_REQUESTS=4", "PARALLEL_HITCOUNT_REQUESTS_TOTAL=4");
+        HitcountLimiter limiter = HitcountLimiter.instance(config);
+        ScanPrefetcher prefetcher = ScanPrefetcher.instance(config, limiter, ExpiringCaches.cacheManager(new AtomicLong()));
+        HitcountLimiter.RequestLimit limit = limiter.forRequest("123456");
+
+        // Half of the permits in use is still allowed
+        assertThat(limit.tryAcquire(), is(true));
+        assertThat(limit.tryAcquire(), is(true));
+        assertThat(prefetcher.tryStart(), is(true));
+        prefetcher.done();
+
+        assertThat(limit.tryAcquire(), is(true));
+        assertThat(prefetcher.tryStart(), is(false));
+        limit.release();
+        assertThat(prefetcher.tryStart(), is(true));
+        prefetcher.done();
+    }
+
+    @Test(timeout = 2_000L)
+    public void testDisabled() throws Exception {
+        System.out.println("testDisabled");
+        Config config = config();
+        ScanPrefetcher prefetcher = ScanPrefetcher.instance(config, HitcountLimiter.instance(config), ExpiringCaches.cacheManager(new AtomicLong()));
+        assertThat(prefetcher.tryStart(), is(false));
+        assertThat(prefetcher.lookup("scan.lti", "123456", "p", "a", 1), nullValue());
+    }
+
+    private static Config config(String... extra) {
+        ArrayList<String> env = new ArrayList<>(asList(
+                "SOLR_URL=http://localhost/solr/corepo",
+                "SOLR_APPID=test",
+                "VIPCORE_ENDPOINT=http://localhost/vipcore/api"));
+        env.addAll(asList(extra));
+        Config config = new Config(env.toArray(String[]::new));
+        config.init();
+        return config;
+    }
+}
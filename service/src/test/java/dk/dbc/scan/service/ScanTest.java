@@ -31,42 +31,49 @@ public class ScanTest {
     @Test(timeout = 2_000L, expected = WebApplicationException.class)
     public void parameterErrorAgencyId() throws Exception {
         System.out.println("parameterErrorAgencyId");
-        Scan scan = Scan.instance(null, null);
-        scan.scan(null, "abc", "def", "ghi", 5, true, null);
+        Scan scan = Scan.instance(null, null, null);
+        scan.scan(null, "abc", "def", "ghi", 5, true, null, null, null);
     }
 
     @Test(timeout = 2_000L, expected = WebApplicationException.class)
     public void parameterErrorProfileName() throws Exception {
         System.out.println("parameterErrorProfileName");
-        Scan scan = Scan.instance(null, null);
-        scan.scan(123456, null, "def", "ghi", 5, true, null);
+        Scan scan = Scan.instance(null, null, null);
+        scan.scan(123456, null, "def", "ghi", 5, true, null, null, null);
     }
 
     @Test(timeout = 2_000L, expected = WebApplicationException.class)
     public void parameterErrorProfileNameInvalid() throws Exception {
         System.out.println("parameterErrorProfileNameInvalid");
-        Scan scan = Scan.instance(null, null);
-        scan.scan(123456, "a-c", "def", "ghi", 5, true, null);
+        Scan scan = Scan.instance(null, null, null);
+        scan.scan(123456, "a-c", "def", "ghi", 5, true, null, null, null);
     }
 
     @Test(timeout = 2_000L, expected = WebApplicationException.class)
     public void parameterErrorTerm() throws Exception {
         System.out.println("parameterErrorTerm");
-        Scan scan = Scan.instance(null, null);
-        scan.scan(123456, "abc", null, "ghi", 5, true, null);
+        Scan scan = Scan.instance(null, null, null);
+        scan.scan(123456, "abc", null, "ghi", 5, true, null, null, null);
     }
 
     @Test(timeout = 2_000L, expected = WebApplicationException.class)
     public void parameterErrorRegister() throws Exception {
         System.out.println("parameterErrorRegister");
-        Scan scan = Scan.instance(null, null);
-        scan.scan(123456, "abc", "def", null, 5, true, null);
+        Scan scan = Scan.instance(null, null, null);
+        scan.scan(123456, "abc", "def", null, 5, true, null, null, null);
     }
 
     @Test(timeout = 2_000L, expected = WebApplicationException.class)
     public void parameterErrorCount() throws Exception {
         System.out.println("parameterErrorCount");
-        Scan scan = Scan.instance(null, null);
-        scan.scan(123456, "abc", "def", "ghi", 0, true, null);
+        Scan scan = Scan.instance(null, null, null);
+        scan.scan(123456, "abc", "def", "ghi", 0, true, null, null, null);
+    }
+
+    @Test(timeout = 2_000L, expected = WebApplicationException.class)
+    public void parameterErrorTimeout() throws Exception {
+        System.out.println("parameterErrorTimeout");
+        Scan scan = Scan.instance(null, null, null);
+        scan.scan(123456, "abc", "def", "ghi", 5, true, null, 0, null);
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2026 DBC A/S (http://dbc.dk/)
+ *
+ * This is part of scan-service
+ *
+ * scan-service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * scan-service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dbc.scan.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ *
+ * @author Morten Bøgeskov (mb@dbc.dk)
+ */
+public class SolrApiTest {
+
+    @Test(timeout = 2_000L)
+    public void testTimeAllowedBucket() throws Exception {
+        System.out.println("testTimeAllowedBucket");
+        assertThat(SolrApi.timeAllowedBucket(0L), is(0L));
+        assertThat(SolrApi.timeAllowedBucket(-5L), is(0L));
+        assertThat(SolrApi.timeAllowedBucket(3L), is(3L));
+        assertThat(SolrApi.timeAllowedBucket(1000L), is(896L));
+        assertThat(SolrApi.timeAllowedBucket(1023L), is(896L));
+        assertThat(SolrApi.timeAllowedBucket(1024L), is(1024L));
+        assertThat(SolrApi.timeAllowedBucket(1999L), is(1792L));
+        // Callers with slightly different budgets share a request
+        assertThat(SolrApi.timeAllowedBucket(2950L), is(SolrApi.timeAllowedBucket(3010L)));
+    }
+}